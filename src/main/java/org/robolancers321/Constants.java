@@ -3,8 +3,6 @@ package org.robolancers321;
 
 import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.pathplanner.lib.path.PathConstraints;
-import edu.wpi.first.apriltag.AprilTagFieldLayout;
-import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
@@ -12,6 +10,9 @@ import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
 import edu.wpi.first.math.util.Units;
+import java.util.List;
+import org.robolancers321.util.MotionProfile;
+import org.robolancers321.util.SuperstructurePlanner.Zone;
 
 public final class Constants {
   public enum Mode {
@@ -22,22 +23,29 @@ public final class Constants {
     public static final String kMainCameraName = "MainCamera";
     public static final String kNoteCameraName = "NoteCamera";
 
-    public static final AprilTagFieldLayout kAprilTagFieldLayout =
-        AprilTagFields.k2024Crescendo.loadAprilTagLayoutField();
-
     public static final Transform3d kRobotToCameraTransform =
         new Transform3d(
           // TODO: see if this is correct
             -0.35, 0, 0.516, new Rotation3d(Math.PI, -31.5 * Math.PI / 180.0, Math.PI)); // 0.34, 0 ,-0.48
     // 0.33, 0.513
-    public static final double kNoteCameraMountHeight =
-        Units.inchesToMeters(11.0); // rough estimate of camera height while mounted on crate
+    public static final double kNoteCameraMountHeight = Units.inchesToMeters(10.0);
     public static final double kNoteCameraMountPitch =
-        0.0; // degrees w/r to the horizontal, above horizontal is positive
+        -24.0; // degrees w/r to the horizontal, above horizontal is positive
+
+    // the note camera looks out the robot's left side, rotation3d pitch is positive downward
+    public static final Transform3d kRobotToNoteCameraTransform =
+        new Transform3d(
+            0.0,
+            0.0,
+            kNoteCameraMountHeight,
+            new Rotation3d(0.0, Math.toRadians(-kNoteCameraMountPitch), 0.5 * Math.PI));
 
     public static final double kTrackWidthMeters = Units.inchesToMeters(22.0);
     public static final double kWheelBaseMeters = Units.inchesToMeters(26.0);
 
+    // bumper to bumper, the same robot length the pathplanner settings use
+    public static final double kBumperLengthMeters = 0.96;
+
     public static final double kMaxSpeedMetersPerSecond = 5.0;
     public static final double kMaxOmegaRadiansPerSecond = 1.5 * Math.PI;
 
@@ -47,6 +55,9 @@ public final class Constants {
     public static final PathConstraints kAutoConstraints =
         new PathConstraints(4.0, 3.0, 270 * Math.PI / 180, 360 * Math.PI / 180);
 
+    // shorter than this and a flow field path is not worth following
+    public static final double kMinFlowFieldPathMeters = 0.05;
+
     public static final SwerveDriveKinematics kSwerveKinematics =
         new SwerveDriveKinematics(
             new Translation2d(0.5 * kTrackWidthMeters, 0.5 * kWheelBaseMeters), // front left
@@ -57,6 +68,35 @@ public final class Constants {
 
     public static double kSecondOrderKinematicsDt = 0.2;
 
+    // module positions as in the module json, front left then clockwise
+    public static final double[] kModuleXMeters = {
+      0.5 * kWheelBaseMeters,
+      0.5 * kWheelBaseMeters,
+      -0.5 * kWheelBaseMeters,
+      -0.5 * kWheelBaseMeters
+    };
+    public static final double[] kModuleYMeters = {
+      0.5 * kTrackWidthMeters,
+      -0.5 * kTrackWidthMeters,
+      -0.5 * kTrackWidthMeters,
+      0.5 * kTrackWidthMeters
+    };
+
+    // setpoint generator limits, acceleration is about what the tread can take before slipping
+    public static final double kMaxModuleAcceleration = 11.0; // m/s^2
+    public static final double kMaxSteerRate = 4.0 * Math.PI; // rad/s
+    public static final double kMaxSetpointGapSeconds = 0.1;
+
+    // wheel slip detection, the drive current limit is dropped on a slipping module until it grips
+    public static final double kSlipRatio = 0.3;
+    public static final double kMinSlipSpeed = 0.3; // m/s
+    public static final double kSlipAcceleration = 15.0; // m/s^2, well past what the tread can do
+    public static final double kSlipDebounceSeconds = 0.06;
+    public static final int kDriveCurrentLimit = 60; // matches physicalproperties.json
+    public static final int kSlipCurrentLimit = 35;
+    public static final double kSlipVisionStdDevMeters = 0.3;
+    public static final double kSlipVisionStdDevRad = 0.5;
+
     public static final double kTranslationP = 1.8; // 1.15
     public static final double kTranslationI = 0.0;
     public static final double kTranslationD = 0.0; // 0.0
@@ -72,6 +112,52 @@ public final class Constants {
     public static final double kHeadingD = 0.01; // 0.01?
 
     public static final double kHeadingTolerance = 1.5;
+
+    // holds heading on a target while the driver strafes, in radians
+    public static final double kAimHeadingP = 5.0;
+    public static final double kAimHeadingD = 0.1;
+    public static final double kAimMaxAngularAcceleration = 4.0 * Math.PI;
+
+    // note chasing trajectories, generated in the background while driving
+    public static final double kNoteChaseMaxVelocity = 3.0;
+    public static final double kNoteChaseMaxAcceleration = 3.0;
+    public static final double kNoteDriveThroughMeters = 0.3;
+    public static final double kNoteReplanThresholdMeters = 0.1;
+    public static final double kNoteMinTangentSpeed = 0.25;
+    public static final double kNoteChaseTimeoutSeconds = 3.0;
+
+    public static final int kMaxTrackedNotes = 8;
+    public static final double kNoteMaxRangeMeters = 4.0;
+    public static final double kNoteMinVisibleRangeMeters = 0.4;
+    public static final double kNoteCameraHalfFovDeg = 30.0;
+    public static final double kNoteRangeStdDevFraction = 0.1;
+    public static final double kNoteBearingStdDevDeg = 2.0;
+    public static final double kNoteProcessNoise = 0.01; // m^2 per second
+    public static final double kNoteGateChiSquared = 9.21; // 99% for 2 dof
+    public static final double kNoteConfidenceHits = 3.0;
+    public static final double kNoteMinConfidence = 0.3;
+    public static final double kNoteTrackTimeoutSeconds = 3.0;
+    public static final int kNoteMaxMisses = 5;
+
+    public static final int kPoseHistoryCapacity = 75; // 1.5 seconds of loops
+    public static final double kVisionMaxPoseJumpMeters = 1.0;
+    // a jump seen this many times in a row at the same offset is odometry being wrong, not vision
+    public static final int kVisionJumpConfirmCount = 5;
+    public static final double kVisionJumpAgreementMeters = 0.3;
+    public static final double kVisionPollPeriodSeconds = 0.01;
+
+    // simulated cameras, roughly an OV9281 on a coprocessor
+    public static final int kSimCameraWidthPixels = 1280;
+    public static final int kSimCameraHeightPixels = 800;
+    public static final double kSimTagCameraFovDeg = 75.0; // diagonal
+    public static final double kSimNoteCameraFovDeg = 70.0; // diagonal
+    public static final double kSimCameraFps = 30.0;
+    public static final double kSimCameraLatencyMs = 35.0;
+    public static final double kSimCameraLatencyStdDevMs = 5.0;
+    public static final double kSimCameraPixelErrorMean = 0.25;
+    public static final double kSimCameraPixelErrorStdDev = 0.08;
+    public static final double kSimNoteDiameterMeters = Units.inchesToMeters(14.0);
+    public static final double kSimNoteHeightMeters = Units.inchesToMeters(2.0);
   }
 
   public static final class SwerveModuleConstants {
@@ -121,8 +207,27 @@ public final class Constants {
     public static TrapezoidProfile.Constraints kProfileConstraints =
         new Constraints(kMaxVelocityDeg, kMaxAccelerationDeg);
 
+    // kSCurve once it has been run on the robot
+    public static final MotionProfile.Type kProfileType = MotionProfile.Type.kTrapezoid;
+    public static final double kMaxJerkDeg = 200000;
+
+    // exponential profile, derived from the sim plant below until the arm is characterized
+    public static final double kProfileMaxInputVolts = 10.0;
+    public static final double kProfileKV = 0.0212; // volts per deg/s
+    public static final double kProfileKA = 0.0001; // volts per deg/s^2
+
+    // sim plant, estimated from cad and sized so kG holds the arm level
+    public static final double kSimGearing = 60.0;
+    public static final double kSimMOI = 0.0745;
+    public static final double kSimArmLengthMeters = 0.35;
+
     public static final double kToleranceDeg = 6.0;
 
+    // profile and controllers run on a notifier off the main loop
+    public static final double kControlLoopPeriodSeconds = 0.005;
+    public static final double kMaxControlLoopDtSeconds = 0.05;
+    public static final int kEncoderFramePeriodMs = 5;
+
     public enum RetractorSetpoint {
       kRetracted(182),
       kMating(150), // 165 // 173
@@ -152,6 +257,9 @@ public final class Constants {
 
     public static final double kAmpShot = -0.8;
 
+    // stop the motor from the touch sensor interrupt instead of on the next loop when intaking
+    public static final boolean kStopOnTouchEdge = true;
+
     // public static final double kFF = 0.00017;
 
     // public static final double kInRPM = 2000;
@@ -170,6 +278,31 @@ public final class Constants {
     public static final double kFF = 0.0001502;
     public static final double kToleranceRPM = 80.0;
 
+    public enum FlywheelControlMode {
+      kFeedforward, // onboard velocity loop with feedforward only
+      kStateSpace, // kalman filter + lqr + feedforward on the rio
+      kBangBang // full output below goal, feedforward above, decided on the rio every loop
+    }
+
+    // state space needs a kA from sysid, bang bang only needs the kFF the spark loop already uses
+    public static final FlywheelControlMode kControlMode = FlywheelControlMode.kBangBang;
+
+    // volts per rad/s derived from kFF at 12v compensation, volts per rad/s^2 is only an estimate
+    // for the sim plant until the flywheel is characterized
+    public static final double kV = 12.0 * kFF * 60.0 / (2.0 * Math.PI);
+    public static final double kA = 0.0035;
+
+    public static final double kGearing = 1.0;
+
+    public static final double kModelStdDevRadPerSec = 3.0;
+    public static final double kEncoderStdDevRadPerSec = 0.01;
+    public static final double kVelocityErrorToleranceRadPerSec = 8.0;
+    public static final double kMaxControlEffortVolts = 12.0;
+    public static final double kBangBangFeedforwardScale = 0.9;
+
+    // fraction of speed lost when a note passes through, only used in simulation
+    public static final double kSimShotDipFraction = 0.25;
+
     public enum FlywheelSetpoint {
       kAcceptHandoff(150), // this is super finicky
       kShiftForward(50),
@@ -188,6 +321,16 @@ public final class Constants {
     }
   }
 
+  public static final class ShotLoggerConstants {
+    public static final int kSummaryWindow = 10;
+
+    // driver requests older than this are not attributed to a shot
+    public static final double kMaxRequestAgeSeconds = 2.0;
+
+    // give up on measuring flywheel recovery after this long
+    public static final double kRecoveryTimeoutSeconds = 1.0;
+  }
+
   public static final class IndexerConstants {
     public static final int kMotorPort = 16;
 
@@ -207,6 +350,14 @@ public final class Constants {
 
     public static final double kTrapRPM = -3000;
     public static final double kSourceRPM = -600;
+
+    // stop the motor from the beam break interrupt instead of on the next loop when shifting
+    public static final boolean kStopOnEntranceEdge = true;
+  }
+
+  public static final class NoteTrackerConstants {
+    // how long a note may sit between the sucker and the indexer entrance during a handoff
+    public static final double kHandoffTimeoutSeconds = 0.5;
   }
 
   public static final class PivotConstants {
@@ -234,6 +385,20 @@ public final class Constants {
     public static TrapezoidProfile.Constraints kProfileConstraints =
         new Constraints(kMaxVelocityDeg, kMaxAccelerationDeg);
 
+    // kSCurve once it has been run on the robot
+    public static final MotionProfile.Type kProfileType = MotionProfile.Type.kTrapezoid;
+    public static final double kMaxJerkDeg = 15000;
+
+    // exponential profile, derived from the sim plant below until the arm is characterized
+    public static final double kProfileMaxInputVolts = 10.0;
+    public static final double kProfileKV = 0.0353; // volts per deg/s
+    public static final double kProfileKA = 0.00013; // volts per deg/s^2
+
+    // sim plant, estimated from cad and sized so kG holds the arm level
+    public static final double kSimGearing = 100.0;
+    public static final double kSimMOI = 0.163;
+    public static final double kSimArmLengthMeters = 0.4;
+
     public static final double kToleranceDeg = 1.0;
 
     public enum PivotSetpoint {
@@ -252,10 +417,29 @@ public final class Constants {
     }
   }
 
+  public static final class SuperstructureConstants {
+    // retractor and pivot angle pairs where the intake and shooter touch, approximated from CAD
+    public static final List<Zone> kInterferenceZones = List.of(new Zone(155.0, 190.0, 20.0, 80.0));
+
+    // segments end on each arm's own atGoal, so waypoints have to clear the zones by more than the
+    // looser of the two tolerances or the next segment can start with an arm still inside
+    public static final double kWaypointMarginDeg =
+        Math.max(RetractorConstants.kToleranceDeg, PivotConstants.kToleranceDeg) + 2.0;
+    public static final double kCollisionCheckStepSeconds = 0.005;
+  }
+
   public static final class AimConstants {
     public static final double kMinDistance = 1.00;
     public static final double kMaxDistance = 3.00;
 
+    // how far ahead to aim each mechanism, roughly the time it takes to settle on a new setpoint
+    public static final double kPivotLatencySeconds = 0.3;
+    public static final double kFlywheelLatencySeconds = 0.5;
+    public static final double kHeadingLatencySeconds = 0.25;
+
+    public static final double kAccelerationFilterTimeConstant = 0.1;
+    public static final double kMaxPredictedAcceleration = 6.0; // m/s^2
+
     public static final class PivotAngleCoefficients {
       public static final double kA = 44.28;
       public static final double kB = 0.260282;
@@ -312,10 +496,28 @@ public final class Constants {
     public static final double kMetersPerRot = 1;
     public static final double kRPMToMPS = kMetersPerRot / 60.0;
 
+    // no feedback until tuned with tuneControllers, the profile and the leveling run on
+    // feedforward alone
     public static double kP = 0;
     public static double kI = 0;
     public static double kD = 0;
 
+    public static final double kS = 0.0;
+    public static final double kV = 1.0 / 94.0; // duty per rot/s, one over neo free speed
+
+    public static final double kMaxVelocity = 60.0; // rot/s
+    public static final double kMaxAcceleration = 200.0; // rot/s^2
+    public static final TrapezoidProfile.Constraints kProfileConstraints =
+        new Constraints(kMaxVelocity, kMaxAcceleration);
+
+    // roll leveling, see Climber.integrateLeveling for the sign
+    public static final double kLevelingRate = 0.5; // rot/s per degree of roll
+    public static final double kMaxLevelingOffset = 8.0; // rot
+    public static final double kRollDeadbandDeg = 1.0;
+
+    // several times a neo's 1.8 A free current, the hooks only pull this with the robot on them
+    public static final double kLoadedCurrentAmps = 10.0;
+
     public static final double kErrorTolerance = 0.1;
 
     // used to zero the climber at a safe speed
@@ -324,7 +526,7 @@ public final class Constants {
     public enum ClimberSetpoint {
       kRetracted(0),
       kTrap(0),
-      kFullExtend(0);
+      kFullExtend(kMaxSoftLimit);
 
       public final double position;
 
@@ -333,4 +535,14 @@ public final class Constants {
       }
     }
   }
+
+  public static final class DiagnosticsConstants {
+    // starting value of the dashboard toggle, the counters cost a jni call each while on
+    public static final boolean kAllocationAccounting = false;
+
+    public static final int kAllocationPublishPeriodLoops = 10;
+
+    // command starts and ends kept for the command trace, a match is a few thousand
+    public static final int kCommandTimelineCapacity = 16384;
+  }
 }
@@ -6,6 +6,12 @@ import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import org.robolancers321.util.AllocationMonitor;
+import org.robolancers321.util.AssetLoader;
+import org.robolancers321.util.Assets;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.CommandTimeline;
+import org.robolancers321.util.MyAlliance;
 import org.robolancers321.util.VirtualSubsystem;
 
 public class Robot extends TimedRobot {
@@ -15,19 +21,38 @@ public class Robot extends TimedRobot {
 
   @Override
   public void robotInit() {
-    m_robotContainer = new RobotContainer();
-    DataLogManager.start();
-    DriverStation.startDataLog(DataLogManager.getLog());
+    try (BootProfiler.Span span = BootProfiler.span("robotInit")) {
+      // start parsing deploy files before anything needs them
+      Assets.preload();
+
+      MyAlliance.update();
+
+      m_robotContainer = BootProfiler.time("RobotContainer", RobotContainer::new);
+      AllocationMonitor.install();
+      DataLogManager.start();
+      DriverStation.startDataLog(DataLogManager.getLog());
+    }
+
+    AssetLoader.report();
+    BootProfiler.finish();
   }
 
   @Override
   public void robotPeriodic() {
+    AllocationMonitor.beginLoop();
+
+    MyAlliance.update();
     VirtualSubsystem.periodicAll();
     CommandScheduler.getInstance().run();
+    CommandTimeline.update();
+
+    AllocationMonitor.endLoop();
   }
 
   @Override
-  public void disabledInit() {}
+  public void disabledInit() {
+    CommandTimeline.writeTrace();
+  }
 
   @Override
   public void disabledPeriodic() {}
@@ -5,7 +5,7 @@ import static org.robolancers321.util.MathUtils.epsilonEquals;
 
 import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.auto.NamedCommands;
-import com.pathplanner.lib.path.PathPlannerPath;
+import edu.wpi.first.math.filter.Debouncer.DebounceType;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.simulation.AddressableLEDSim;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
@@ -20,6 +20,7 @@ import edu.wpi.first.wpilibj2.command.WaitCommand;
 import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import edu.wpi.first.wpilibj2.command.button.RobotModeTriggers;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import java.util.function.Supplier;
 import org.robolancers321.Constants.FlywheelConstants;
 import org.robolancers321.Constants.PivotConstants;
 import org.robolancers321.Constants.RetractorConstants;
@@ -50,15 +51,22 @@ import org.robolancers321.commands.ScoreSpeakerFixedTeleop;
 import org.robolancers321.commands.ScoreSpeakerFromDistance;
 import org.robolancers321.commands.Shift;
 import org.robolancers321.subsystems.Climber;
+import org.robolancers321.subsystems.NoteTracker;
+import org.robolancers321.subsystems.NoteTracker.NoteState;
+import org.robolancers321.subsystems.ShotLogger;
 import org.robolancers321.subsystems.LED.LED;
 import org.robolancers321.subsystems.LED.LED.Section;
 import org.robolancers321.subsystems.drivetrain.Drivetrain;
 import org.robolancers321.subsystems.intake.Retractor;
 import org.robolancers321.subsystems.intake.Sucker;
+import org.robolancers321.subsystems.launcher.AimPredictor;
 import org.robolancers321.subsystems.launcher.AimTable;
 import org.robolancers321.subsystems.launcher.Flywheel;
 import org.robolancers321.subsystems.launcher.Indexer;
 import org.robolancers321.subsystems.launcher.Pivot;
+import org.robolancers321.util.Assets;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.CommandTimeline;
 
 public class RobotContainer {
   private Drivetrain drivetrain;
@@ -68,6 +76,10 @@ public class RobotContainer {
   private Indexer indexer;
   private Flywheel flywheel;
   private Climber climber;
+  private NoteTracker noteTracker;
+  private Trigger noteAtLauncher;
+  private ShotLogger shotLogger;
+  private AimPredictor aimPredictor;
   private XboxController driverController;
   private XboxController manipulatorController;
   private SendableChooser<Command> autoChooser;
@@ -83,6 +95,11 @@ public class RobotContainer {
     this.indexer = Indexer.getInstance();
     this.flywheel = Flywheel.getInstance();
     this.climber = Climber.getInstance();
+    this.noteTracker = NoteTracker.getInstance();
+    this.noteAtLauncher =
+        this.noteTracker.is(NoteState.kHandingOff, NoteState.kStaged, NoteState.kInShooter);
+    this.shotLogger = ShotLogger.getInstance();
+    this.aimPredictor = AimPredictor.getInstance();
 
     this.driverController = new XboxController(0);
     this.manipulatorController = new XboxController(1);
@@ -99,7 +116,7 @@ public class RobotContainer {
     this.configureDefaultCommands();
     this.configureDriverController_old(); // TODO: test new controls
     this.configureManipulatorController();
-    this.configureAuto();
+    BootProfiler.run("configureAuto", this::configureAuto);
   }
 
   private void configureEvents() {
@@ -109,6 +126,9 @@ public class RobotContainer {
     CommandScheduler.getInstance()
         .onCommandInitialize(
             command -> SmartDashboard.putString("Curr Command", command.getName()));
+
+    // every start and end, with groups broken down, for the trace written when disabled
+    CommandTimeline.install();
   }
 
   private void configureLEDs() {
@@ -119,6 +139,12 @@ public class RobotContainer {
     // TODO: more technically correct solution is probably propagating robot mode into signal sets?
     LED.registerSignal(15, () -> climbing, LED.meteorRain(0.02, LED.kClimbingMeteor));
 
+    // note staged in the launcher, solid pink
+    LED.registerSignal(
+        1,
+        this.noteTracker.is(NoteState.kStaged, NoteState.kInShooter),
+        LED.solid(Section.FULL, new Color(255, 0, 120)));
+
     // intakeDown, solid orange
     LED.registerSignal(
         2,
@@ -127,7 +153,9 @@ public class RobotContainer {
 
     // note in sucker, solid white
     LED.registerSignal(
-        3, this.sucker::noteDetected, LED.solid(Section.FULL, new Color(255, 255, 255)));
+        3,
+        this.noteTracker.is(NoteState.kInIntake, NoteState.kHandingOff),
+        LED.solid(Section.FULL, new Color(255, 255, 255)));
 
     // flywheel is revving, solid yellow
     LED.registerSignal(
@@ -151,6 +179,12 @@ public class RobotContainer {
         6,
         () -> this.retractor.getGoal() == RetractorConstants.RetractorSetpoint.kAmp.angle,
         LED.solid(Section.FULL, new Color(20, 0, 50)));
+
+    // note just left the shooter, strobe green
+    LED.registerSignal(
+        7,
+        this.noteTracker.noteFired().debounce(0.5, DebounceType.kFalling),
+        LED.strobe(Section.FULL, new Color(0, 255, 0)));
   }
 
   private void configureDefaultCommands() {
@@ -164,11 +198,12 @@ public class RobotContainer {
     this.flywheel.setDefaultCommand(
         this.flywheel.revSpeakerFromRPM(
             () -> {
-              if (this.indexer.entranceBeamNotBroken()) return 0.0;
+              // rev from the moment the note reaches the launcher, not once the handoff is done
+              if (!this.noteAtLauncher.getAsBoolean()) return 0.0;
 
               if (this.drivetrain.getDistanceToSpeaker() < 4.0)
                 return Math.min(
-                    0.85 * AimTable.interpolateFlywheelRPM(this.drivetrain.getDistanceToSpeaker()),
+                    0.85 * AimTable.interpolateFlywheelRPM(this.aimPredictor.getFlywheelDistance()),
                     2000);
 
               return 0.0;
@@ -181,11 +216,11 @@ public class RobotContainer {
     this.pivot.setDefaultCommand(
         this.pivot.aimAtSpeaker(
             () -> {
-              if (this.indexer.entranceBeamNotBroken())
+              if (!this.noteAtLauncher.getAsBoolean())
                 return PivotConstants.PivotSetpoint.kRetracted.angle;
 
               if (this.drivetrain.getDistanceToSpeaker() < 4.0)
-                return AimTable.interpolatePivotAngle(this.drivetrain.getDistanceToSpeaker());
+                return AimTable.interpolatePivotAngle(this.aimPredictor.getPivotDistance());
 
               return PivotConstants.PivotSetpoint.kRetracted.angle;
             }));
@@ -208,6 +243,9 @@ public class RobotContainer {
    * Press X Button: emergency cancel
    * Press Y Button: enter/exit climb mode
    *
+   * Hold Right Stick: aim the launcher at the speaker while driving
+   * Hold Left Stick: aim the intake at the closest tracked note while driving
+   *
    */
   private void configureDriverController_old() {
     // TODO: i think we keep this just in case for teleop
@@ -245,6 +283,13 @@ public class RobotContainer {
         .onTrue(new EmergencyCancel().unless(() -> climbing));
 
     new Trigger(this.driverController::getYButton).onTrue(toggleClimbingMode());
+
+    new Trigger(this.driverController::getRightStickButton)
+        .and(() -> !climbing)
+        .whileTrue(this.drivetrain.teleopDriveAimedAtSpeaker(this.driverController));
+    new Trigger(this.driverController::getLeftStickButton)
+        .and(() -> !climbing)
+        .whileTrue(this.drivetrain.teleopDriveAimedAtNote(this.driverController));
   }
 
   private void configureDriverController() {
@@ -256,6 +301,7 @@ public class RobotContainer {
         .whileTrue(new ScoreSpeakerFixedTeleop().unless(() -> climbing))
         .onFalse(
             new SequentialCommandGroup(
+                    this.shotLogger.markShotRequested(),
                     this.retractor.moveToSpeaker(),
                     new ParallelDeadlineGroup(
                         (new WaitUntilCommand(this.indexer::exitBeamBroken)
@@ -304,6 +350,8 @@ public class RobotContainer {
    * Right Trigger: right climber down
    * Left Bumper: left climber up
    * Left Trigger: left climber down
+   * Hold D-Pad Up: extend both climbers together
+   * Hold D-Pad Down: climb with both climbers together, leveling by roll
    */
 
   private void configureManipulatorController() {
@@ -344,11 +392,19 @@ public class RobotContainer {
                     })
                 .onlyIf(() -> climbing));
 
+    new Trigger(() -> this.manipulatorController.getPOV() == 0)
+        .and(() -> climbing)
+        .whileTrue(climber.extend());
+    new Trigger(() -> this.manipulatorController.getPOV() == 180)
+        .and(() -> climbing)
+        .whileTrue(climber.climb());
+
     new Trigger(this.manipulatorController::getRightBumper)
         .and(() -> !climbing)
         .whileTrue(new ScoreSpeakerFixedTeleop().unless(() -> climbing))
         .onFalse(
             new SequentialCommandGroup(
+                    this.shotLogger.markShotRequested(),
                     this.retractor.moveToSpeaker(),
                     new ParallelDeadlineGroup(
                         (new WaitUntilCommand(this.indexer::exitBeamBroken)
@@ -513,12 +569,13 @@ public class RobotContainer {
         // new InstantCommand(
         // () -> this.drivetrain.zeroYaw(this.drivetrain.getPose().getRotation().getDegrees()))
         );
-    this.autoChooser.setDefaultOption("Score And Sit", new ScoreAndSit());
+    this.autoChooser.setDefaultOption(
+        "Score And Sit", BootProfiler.time("auto Score And Sit", ScoreAndSit::new));
     this.autoChooser.addOption(
         "Tune",
         drivetrain
-            .zeroToPath(PathPlannerPath.fromPathFile("Bruh"))
-            .andThen(AutoBuilder.followPath(PathPlannerPath.fromPathFile("Bruh"))));
+            .zeroToPath(Assets.getPath("Bruh"))
+            .andThen(AutoBuilder.followPath(Assets.getPath("Bruh"))));
 
     // this.autoChooser.addOption(
     //     "TESTING DONT USE",
@@ -544,27 +601,31 @@ public class RobotContainer {
     // this.autoChooser.addOption("3NB Close", new Auto3NBClose());
 
     // pathplanner
-    this.autoChooser.addOption("4 piece mid", new FourMid());
-    this.autoChooser.addOption("AMP score & taxi", new TopTaxi());
-    this.autoChooser.addOption("SOURCE Score & taxi", new BotTaxi());
+    this.addAutoOption("4 piece mid", FourMid::new);
+    this.addAutoOption("AMP score & taxi", TopTaxi::new);
+    this.addAutoOption("SOURCE Score & taxi", BotTaxi::new);
 
-    this.autoChooser.addOption("AMP 3 piece", new FourTop());
-    this.autoChooser.addOption("AMP 3 piece 2", new FourTopAlt());
-    this.autoChooser.addOption("AMP straight to center", new ThreeTopCenter());
+    this.addAutoOption("AMP 3 piece", FourTop::new);
+    this.addAutoOption("AMP 3 piece 2", FourTopAlt::new);
+    this.addAutoOption("AMP straight to center", ThreeTopCenter::new);
 
-    this.autoChooser.addOption("SOURCE 3 piece", new FourBottom());
-    this.autoChooser.addOption("SOURCE straight to center", new ThreeBotCenter());
-    this.autoChooser.addOption("SOURCE straight to center 2", new ThreeBotCenterAlt());
+    this.addAutoOption("SOURCE 3 piece", FourBottom::new);
+    this.addAutoOption("SOURCE straight to center", ThreeBotCenter::new);
+    this.addAutoOption("SOURCE straight to center 2", ThreeBotCenterAlt::new);
 
-    this.autoChooser.addOption("AMP CHAOS >:)", new TopDisrupt());
-    this.autoChooser.addOption("SOURCE chaos >:)", new BotDisrupt());
-    this.autoChooser.addOption("SOURCE chaos with pickup >:)", new BotDisruptWithPickup());
+    this.addAutoOption("AMP CHAOS >:)", TopDisrupt::new);
+    this.addAutoOption("SOURCE chaos >:)", BotDisrupt::new);
+    this.addAutoOption("SOURCE chaos with pickup >:)", BotDisruptWithPickup::new);
 
     // this.autoChooser.addOption("2 piece mid", new Close3M());
 
     SmartDashboard.putData(autoChooser);
   }
 
+  private void addAutoOption(String name, Supplier<Command> auto) {
+    this.autoChooser.addOption(name, BootProfiler.time("auto " + name, auto));
+  }
+
   private void configureNamedCommands() {
     NamedCommands.registerCommand("IntakeNote", new IntakeNote());
   }
@@ -589,11 +650,11 @@ public class RobotContainer {
           this.pivot.setDefaultCommand(
               this.pivot.aimAtSpeaker(
                   () -> {
-                    if (this.indexer.entranceBeamNotBroken())
+                    if (!this.noteAtLauncher.getAsBoolean())
                       return PivotConstants.PivotSetpoint.kRetracted.angle;
 
                     if (this.drivetrain.getDistanceToSpeaker() < 4.0)
-                      return AimTable.interpolatePivotAngle(this.drivetrain.getDistanceToSpeaker());
+                      return AimTable.interpolatePivotAngle(this.aimPredictor.getPivotDistance());
 
                     return PivotConstants.PivotSetpoint.kRetracted.angle;
                   }));
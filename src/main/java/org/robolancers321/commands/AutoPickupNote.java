@@ -37,6 +37,7 @@ public class AutoPickupNote extends SequentialCommandGroup {
                         this.drivetrain
                             .driveIntoNote()
                             .raceWith(new WaitUntilCommand(this.sucker::noteDetected)),
+                        // creep sideways into the note if the chase ended without it
                         this.drivetrain
                             .driveCommand(0.0, 1.5, 0.0, false)
                             .until(this.sucker::noteDetected)
@@ -44,7 +45,7 @@ public class AutoPickupNote extends SequentialCommandGroup {
                         this.drivetrain.stop(),
                         this.retractor.moveToMating()),
                     new InstantCommand(),
-                    this.drivetrain::seesNote))),
+                    this.drivetrain::hasTrackedNote))),
         this.sucker.offInstantly());
   }
 }
@@ -14,10 +14,10 @@ public class AutoScoreTrap extends SequentialCommandGroup {
 
     this.addCommands(
         Commands.defer(() -> this.drivetrain.pathfindToTrap(), Set.of(drivetrain))
-            .onlyIf(() -> this.drivetrain.getClosestTrapPosition().getDistance() < 3.0),
+            .onlyIf(() -> this.drivetrain.getDistanceToClosestTrap() < 3.0),
         new Mate()
             .andThen(new Shift())
-            .onlyIf(() -> this.drivetrain.getClosestTrapPosition().getDistance() < 0.5),
-        new TrapShot().onlyIf(() -> this.drivetrain.getClosestTrapPosition().getDistance() < 0.5));
+            .onlyIf(() -> this.drivetrain.getDistanceToClosestTrap() < 0.5),
+        new TrapShot().onlyIf(() -> this.drivetrain.getDistanceToClosestTrap() < 0.5));
   }
 }
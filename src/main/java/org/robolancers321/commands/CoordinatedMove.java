@@ -0,0 +1,84 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.commands;
+
+import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import java.util.Set;
+import org.robolancers321.Constants.PivotConstants;
+import org.robolancers321.Constants.RetractorConstants;
+import org.robolancers321.Constants.SuperstructureConstants;
+import org.robolancers321.subsystems.intake.Retractor;
+import org.robolancers321.subsystems.launcher.Pivot;
+import org.robolancers321.util.SuperstructurePlanner;
+import org.robolancers321.util.SuperstructurePlanner.Limits;
+import org.robolancers321.util.SuperstructurePlanner.Plan;
+import org.robolancers321.util.SuperstructurePlanner.Segment;
+
+public class CoordinatedMove extends SequentialCommandGroup {
+  private static final SuperstructurePlanner planner =
+      new SuperstructurePlanner(
+          SuperstructureConstants.kInterferenceZones,
+          new Limits(
+              RetractorConstants.kMaxVelocityDeg,
+              RetractorConstants.kMaxAccelerationDeg,
+              RetractorConstants.kMinAngle,
+              RetractorConstants.kMaxAngle),
+          new Limits(
+              PivotConstants.kMaxVelocityDeg,
+              PivotConstants.kMaxAccelerationDeg,
+              PivotConstants.kMinAngle,
+              PivotConstants.kMaxAngle),
+          SuperstructureConstants.kWaypointMarginDeg,
+          SuperstructureConstants.kCollisionCheckStepSeconds);
+
+  private Retractor retractor;
+  private Pivot pivot;
+
+  // moves both arms together so they arrive at the same time without hitting each other
+  public CoordinatedMove(double retractorGoalDeg, double pivotGoalDeg) {
+    this.retractor = Retractor.getInstance();
+    this.pivot = Pivot.getInstance();
+
+    // plan from wherever the arms actually are when the command starts
+    this.addCommands(
+        Commands.defer(
+            () -> this.buildMoves(retractorGoalDeg, pivotGoalDeg),
+            Set.of(this.retractor, this.pivot)));
+
+    this.setName("CoordinatedMove");
+  }
+
+  private Command buildMoves(double retractorGoalDeg, double pivotGoalDeg) {
+    Plan plan =
+        planner.plan(
+            this.retractor.getPositionDeg(),
+            this.pivot.getPositionDeg(),
+            retractorGoalDeg,
+            pivotGoalDeg);
+
+    SmartDashboard.putNumber("superstructure plan time (s)", plan.totalTimeSeconds());
+    SmartDashboard.putNumber("superstructure plan segments", plan.segments().size());
+    SmartDashboard.putBoolean("superstructure plan collision free", plan.collisionFree());
+
+    SequentialCommandGroup moves = new SequentialCommandGroup();
+
+    for (Segment segment : plan.segments()) {
+      moves.addCommands(
+          new ParallelCommandGroup(
+              this.retractor.moveToAngle(
+                  segment.retractorGoalDeg(), toConstraints(segment.retractorLimits())),
+              this.pivot.moveToAngle(
+                  segment.pivotGoalDeg(), toConstraints(segment.pivotLimits()))));
+    }
+
+    return moves;
+  }
+
+  private static Constraints toConstraints(Limits limits) {
+    return new Constraints(limits.maxVelocity(), limits.maxAcceleration());
+  }
+}
@@ -3,7 +3,6 @@ package org.robolancers321.commands;
 
 import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import org.robolancers321.subsystems.intake.Retractor;
 import org.robolancers321.subsystems.intake.Sucker;
 
@@ -16,10 +15,7 @@ public class IntakeNote extends SequentialCommandGroup {
     this.sucker = Sucker.getInstance();
 
     this.addCommands(
-        new ParallelDeadlineGroup(
-            new WaitUntilCommand(this.sucker::noteDetected),
-            this.retractor.moveToIntake(),
-            this.sucker.in()),
+        new ParallelDeadlineGroup(this.sucker.inUntilNote(), this.retractor.moveToIntake()),
         this.sucker.offInstantly(),
         this.retractor.moveToMating());
   }
@@ -33,10 +33,7 @@ public class Mate extends SequentialCommandGroup {
     this.addCommands(
         this.flywheel.off(),
         this.indexer.off(),
-        new ParallelCommandGroup(
-            // supplier for tuning, use SD from above
-            this.retractor.moveToAngle(RetractorSetpoint.kMating.angle),
-            this.pivot.moveToAngle(PivotSetpoint.kMating.angle)),
+        new CoordinatedMove(RetractorSetpoint.kMating.angle, PivotSetpoint.kMating.angle),
         new ParallelCommandGroup(
                 this.indexer.acceptHandoff(), this.sucker.out(), this.flywheel.acceptHandoff())
             .until(this.indexer::exitBeamBroken)
@@ -2,11 +2,11 @@
 package org.robolancers321.commands.PPAutos;
 
 import com.pathplanner.lib.auto.AutoBuilder;
-import com.pathplanner.lib.path.PathPlannerPath;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import org.robolancers321.commands.AutoPickupNote;
 import org.robolancers321.commands.ScoreSpeakerFixedAuto;
 import org.robolancers321.subsystems.drivetrain.Drivetrain;
+import org.robolancers321.util.Assets;
 
 public class BotDisruptWithPickup extends SequentialCommandGroup {
   private Drivetrain drivetrain;
@@ -15,9 +15,9 @@ public class BotDisruptWithPickup extends SequentialCommandGroup {
     this.drivetrain = Drivetrain.getInstance();
 
     this.addCommands(
-      Drivetrain.getInstance().zeroToPath(PathPlannerPath.fromPathFile("BotDisruptWithPickup")),
+      Drivetrain.getInstance().zeroToPath(Assets.getPath("BotDisruptWithPickup")),
         new ScoreSpeakerFixedAuto(),
-        AutoBuilder.followPath(PathPlannerPath.fromPathFile("BotDisruptWithPickup")),
+        AutoBuilder.followPath(Assets.getPath("BotDisruptWithPickup")),
         new AutoPickupNote());
   }
 }
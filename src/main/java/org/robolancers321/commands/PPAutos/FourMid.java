@@ -1,7 +1,6 @@
 /* (C) Robolancers 2024 */
 package org.robolancers321.commands.PPAutos;
 
-import com.pathplanner.lib.commands.PathPlannerAuto;
 import com.pathplanner.lib.path.PathPlannerPath;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
@@ -15,6 +14,7 @@ import org.robolancers321.subsystems.intake.Sucker;
 import org.robolancers321.subsystems.launcher.Flywheel;
 import org.robolancers321.subsystems.launcher.Indexer;
 import org.robolancers321.subsystems.launcher.Pivot;
+import org.robolancers321.util.Assets;
 
 public class FourMid extends SequentialCommandGroup {
   private Drivetrain drivetrain;
@@ -32,7 +32,7 @@ public class FourMid extends SequentialCommandGroup {
     this.indexer = Indexer.getInstance();
     this.flywheel = Flywheel.getInstance();
 
-    List<PathPlannerPath> pathGroup = PathPlannerAuto.getPathGroupFromAutoFile("4Mid");
+    List<PathPlannerPath> pathGroup = Assets.getAutoPathGroup("4Mid");
 
     this.addCommands(
         Drivetrain.getInstance().zeroToPath(pathGroup.get(0)),
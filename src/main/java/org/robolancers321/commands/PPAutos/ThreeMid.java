@@ -2,7 +2,6 @@
 package org.robolancers321.commands.PPAutos;
 
 import com.pathplanner.lib.auto.AutoBuilder;
-import com.pathplanner.lib.commands.PathPlannerAuto;
 import com.pathplanner.lib.path.PathPlannerPath;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import java.util.List;
@@ -16,6 +15,7 @@ import org.robolancers321.subsystems.intake.Sucker;
 import org.robolancers321.subsystems.launcher.Flywheel;
 import org.robolancers321.subsystems.launcher.Indexer;
 import org.robolancers321.subsystems.launcher.Pivot;
+import org.robolancers321.util.Assets;
 
 public class ThreeMid extends SequentialCommandGroup {
   private Drivetrain drivetrain;
@@ -33,7 +33,7 @@ public class ThreeMid extends SequentialCommandGroup {
     this.indexer = Indexer.getInstance();
     this.flywheel = Flywheel.getInstance();
 
-    List<PathPlannerPath> pathGroup = PathPlannerAuto.getPathGroupFromAutoFile("3Mid");
+    List<PathPlannerPath> pathGroup = Assets.getAutoPathGroup("3Mid");
 
     this.addCommands(
       Drivetrain.getInstance().zeroToPath(pathGroup.get(0)),
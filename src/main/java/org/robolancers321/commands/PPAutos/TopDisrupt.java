@@ -2,10 +2,10 @@
 package org.robolancers321.commands.PPAutos;
 
 import com.pathplanner.lib.auto.AutoBuilder;
-import com.pathplanner.lib.path.PathPlannerPath;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import org.robolancers321.commands.ScoreSpeakerFixedAuto;
 import org.robolancers321.subsystems.drivetrain.Drivetrain;
+import org.robolancers321.util.Assets;
 
 public class TopDisrupt extends SequentialCommandGroup {
   private Drivetrain drivetrain;
@@ -14,8 +14,8 @@ public class TopDisrupt extends SequentialCommandGroup {
     this.drivetrain = Drivetrain.getInstance();
 
     this.addCommands(
-      Drivetrain.getInstance().zeroToPath(PathPlannerPath.fromPathFile("TopDisrupt")),
+      Drivetrain.getInstance().zeroToPath(Assets.getPath("TopDisrupt")),
         new ScoreSpeakerFixedAuto(),
-        AutoBuilder.followPath(PathPlannerPath.fromPathFile("TopDisrupt")));
+        AutoBuilder.followPath(Assets.getPath("TopDisrupt")));
   }
 }
@@ -6,6 +6,7 @@ import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
 import org.robolancers321.subsystems.drivetrain.Drivetrain;
 import org.robolancers321.subsystems.intake.Retractor;
+import org.robolancers321.subsystems.launcher.AimPredictor;
 import org.robolancers321.subsystems.launcher.AimTable;
 import org.robolancers321.subsystems.launcher.Flywheel;
 import org.robolancers321.subsystems.launcher.Indexer;
@@ -17,6 +18,7 @@ public class ScoreSpeakerFromDistance extends SequentialCommandGroup {
   private Indexer indexer;
   private Flywheel flywheel;
   private Drivetrain drivetrain;
+  private AimPredictor aimPredictor;
 
   public ScoreSpeakerFromDistance() {
     this.pivot = Pivot.getInstance();
@@ -24,6 +26,7 @@ public class ScoreSpeakerFromDistance extends SequentialCommandGroup {
     this.indexer = Indexer.getInstance();
     this.flywheel = Flywheel.getInstance();
     this.drivetrain = Drivetrain.getInstance();
+    this.aimPredictor = AimPredictor.getInstance();
 
     // NOTE: actual usage of these are now inside of aim table
     SmartDashboard.putNumber("tuning pivot angle", 0);
@@ -36,9 +39,9 @@ public class ScoreSpeakerFromDistance extends SequentialCommandGroup {
         this.drivetrain.stop(),
         new ParallelCommandGroup(
             this.pivot.aimAtSpeaker(
-                () -> AimTable.interpolatePivotAngle(this.drivetrain.getDistanceToSpeaker())),
+                () -> AimTable.interpolatePivotAngle(this.aimPredictor.getPivotDistance())),
             this.flywheel.revSpeakerFromRPM(
-                () -> AimTable.interpolateFlywheelRPM(this.drivetrain.getDistanceToSpeaker()))),
+                () -> AimTable.interpolateFlywheelRPM(this.aimPredictor.getFlywheelDistance()))),
         // TODO: pivot does not move:
         // .withTimeout(1.5)
         this.indexer.outtake(),
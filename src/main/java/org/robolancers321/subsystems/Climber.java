@@ -8,12 +8,16 @@ import com.revrobotics.CANSparkMax;
 import com.revrobotics.RelativeEncoder;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import org.robolancers321.Constants.ClimberConstants;
+import org.robolancers321.subsystems.drivetrain.Drivetrain;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.MonitoredSubsystem;
 
-public class Climber extends SubsystemBase {
+public class Climber extends MonitoredSubsystem {
   /*
    * Singleton
    */
@@ -21,7 +25,7 @@ public class Climber extends SubsystemBase {
   private static Climber instance = null;
 
   public static Climber getInstance() {
-    if (instance == null) instance = new Climber();
+    if (instance == null) instance = BootProfiler.time("Climber", Climber::new);
 
     return instance;
   }
@@ -38,6 +42,20 @@ public class Climber extends SubsystemBase {
 
   private final PIDController leftClimberPID;
   private final PIDController rightClimberPID;
+  private final SimpleMotorFeedforward feedforwardController;
+  private final TrapezoidProfile motionProfile;
+
+  private final Drivetrain drivetrain;
+
+  // both hooks follow one shared reference, offset from each other by the leveling term
+  private TrapezoidProfile.State reference = new TrapezoidProfile.State();
+  private TrapezoidProfile.State goalReference = new TrapezoidProfile.State();
+  private double levelingOffset = 0.0;
+  private double levelingVelocity = 0.0;
+  private boolean hanging = false;
+
+  private double leftOutput = 0.0;
+  private double rightOutput = 0.0;
 
   // private final DigitalInput leftLimitSwitch;
   // private final DigitalInput rightLimitSwitch;
@@ -55,6 +73,11 @@ public class Climber extends SubsystemBase {
         new PIDController(ClimberConstants.kP, ClimberConstants.kI, ClimberConstants.kD);
     this.rightClimberPID =
         new PIDController(ClimberConstants.kP, ClimberConstants.kI, ClimberConstants.kD);
+    this.feedforwardController =
+        new SimpleMotorFeedforward(ClimberConstants.kS, ClimberConstants.kV);
+    this.motionProfile = new TrapezoidProfile(ClimberConstants.kProfileConstraints);
+
+    this.drivetrain = Drivetrain.getInstance();
 
     // this.leftLimitSwitch = new DigitalInput(ClimberConstants.kLeftLimitSwitchPort);
     // this.rightLimitSwitch = new DigitalInput(ClimberConstants.kRightLimitSwitchPort);
@@ -123,12 +146,113 @@ public class Climber extends SubsystemBase {
     return rightClimberEncoder.getPosition();
   }
 
-  private void setLeftClimberSetpoint(double setpoint) {
-    leftClimberPID.setSetpoint(setpoint);
+  private double getAverageClimberPosition() {
+    return (getLeftClimberPosition() + getRightClimberPosition()) / 2.0;
+  }
+
+  // start the shared reference from where the hooks actually are
+  private void resetReference() {
+    reference = new TrapezoidProfile.State(getAverageClimberPosition(), 0.0);
+    goalReference = reference;
+    levelingOffset = 0.0;
+    levelingVelocity = 0.0;
+    hanging = false;
+
+    leftClimberPID.reset();
+    rightClimberPID.reset();
+  }
+
+  private void setGoal(double position) {
+    goalReference =
+        new TrapezoidProfile.State(
+            MathUtil.clamp(
+                position, ClimberConstants.kMinSoftLimit, ClimberConstants.kMaxSoftLimit),
+            0.0);
+  }
+
+  /**
+   * One step of integrating roll into how much further the left hook is extended than the right.
+   * Roll is positive when the left side is high (wpilib's nwu convention, which the gyro follows),
+   * and extending a hook lowers that side of a hanging robot, so positive roll extends the left
+   * hook and retracts the right.
+   */
+  public static double integrateLeveling(double offset, double rollDeg, double dtSeconds) {
+    if (Math.abs(rollDeg) < ClimberConstants.kRollDeadbandDeg) return offset;
+
+    return MathUtil.clamp(
+        offset + ClimberConstants.kLevelingRate * rollDeg * dtSeconds,
+        -ClimberConstants.kMaxLevelingOffset,
+        ClimberConstants.kMaxLevelingOffset);
+  }
+
+  // latched so a momentary dip in current doesn't drop the leveling mid climb
+  private boolean isHanging() {
+    hanging |=
+        leftClimberMotor.getOutputCurrent() > ClimberConstants.kLoadedCurrentAmps
+            && rightClimberMotor.getOutputCurrent() > ClimberConstants.kLoadedCurrentAmps;
+
+    return hanging;
+  }
+
+  /**
+   * Output for one hook following the shared reference shifted by its share of the leveling
+   * offset, positive for the left hook and negative for the right. The offset's rate of change
+   * goes through the feedforward, so the hooks move apart to level the robot even before any
+   * feedback is tuned.
+   */
+  public static double hookOutput(
+      SimpleMotorFeedforward feedforward,
+      PIDController feedback,
+      TrapezoidProfile.State reference,
+      double measuredPosition,
+      double offset,
+      double offsetVelocity) {
+    return feedforward.calculate(reference.velocity + offsetVelocity)
+        + feedback.calculate(measuredPosition, reference.position + offset);
+  }
+
+  // unloaded hooks can't level anything, so integrating roll before then only winds up
+  private void updateLeveling() {
+    levelingVelocity = 0.0;
+
+    if (!isHanging()) return;
+
+    double nextOffset = integrateLeveling(levelingOffset, drivetrain.getRollDeg(), 0.02);
+
+    levelingVelocity = (nextOffset - levelingOffset) / 0.02;
+    levelingOffset = nextOffset;
+  }
+
+  private void followReference() {
+    reference = motionProfile.calculate(0.02, reference, goalReference);
+
+    updateLeveling();
+
+    leftOutput =
+        hookOutput(
+            feedforwardController,
+            leftClimberPID,
+            reference,
+            getLeftClimberPosition(),
+            levelingOffset,
+            levelingVelocity);
+    rightOutput =
+        hookOutput(
+            feedforwardController,
+            rightClimberPID,
+            reference,
+            getRightClimberPosition(),
+            -levelingOffset,
+            -levelingVelocity);
+
+    setLeftPower(leftOutput);
+    setRightPower(rightOutput);
   }
 
-  private void setRightClimberSetpoint(double setpoint) {
-    rightClimberPID.setSetpoint(setpoint);
+  public boolean atGoal() {
+    return reference.position == goalReference.position
+        && leftClimberPID.atSetpoint()
+        && rightClimberPID.atSetpoint();
   }
 
   public void setLeftPower(double speed) {
@@ -146,14 +270,21 @@ public class Climber extends SubsystemBase {
     SmartDashboard.putNumber("climberLeft Position", getLeftClimberPosition());
     // SmartDashboard.putBoolean("climberLeft LimitSwitch", leftLimitSwitch.get());
     SmartDashboard.putNumber("climberLeft MotorOutput", leftClimberMotor.getAppliedOutput());
-    SmartDashboard.putNumber(
-        "climberLeft PIDOutput", leftClimberPID.calculate(getLeftClimberPosition()));
+    SmartDashboard.putNumber("climberLeft ControllerOutput", leftOutput);
 
     SmartDashboard.putNumber("climberRight Position", getRightClimberPosition());
     // SmartDashboard.putBoolean("climberRight LimitSwitch", rightLimitSwitch.get());
     SmartDashboard.putNumber("climberRight MotorOutput", rightClimberMotor.getAppliedOutput());
-    SmartDashboard.putNumber(
-        "climberRight PIDOutput", rightClimberPID.calculate(getRightClimberPosition()));
+    SmartDashboard.putNumber("climberRight ControllerOutput", rightOutput);
+
+    SmartDashboard.putNumber("climber ReferencePosition", reference.position);
+    SmartDashboard.putNumber("climber ReferenceVelocity", reference.velocity);
+    SmartDashboard.putNumber("climber GoalPosition", goalReference.position);
+    SmartDashboard.putNumber("climber LevelingOffset", levelingOffset);
+    SmartDashboard.putNumber("climber LevelingVelocity", levelingVelocity);
+    SmartDashboard.putBoolean("climber Hanging", hanging);
+    SmartDashboard.putNumber("climber Roll", drivetrain.getRollDeg());
+    SmartDashboard.putBoolean("climber AtGoal", atGoal());
   }
 
   private void initTuning() {
@@ -175,44 +306,40 @@ public class Climber extends SubsystemBase {
     leftClimberPID.setPID(tunedP, tunedI, tunedD);
     rightClimberPID.setPID(tunedP, tunedI, tunedD);
 
-    double setpoint =
-        MathUtil.clamp(
-            SmartDashboard.getNumber("climber target position (deg)", 0),
-            ClimberConstants.kMinSoftLimit,
-            ClimberConstants.kMaxSoftLimit);
+    setGoal(SmartDashboard.getNumber("climber target position (deg)", 0));
 
-    setRightClimberSetpoint(setpoint);
-    setLeftClimberSetpoint(setpoint);
+    followReference();
   }
 
   @Override
-  public void periodic() {
+  protected void monitoredPeriodic() {
     doSendables();
   }
 
-  public Command leftUp(double setpoint) {
-    setLeftClimberSetpoint(setpoint);
-
-    return run(() -> setLeftPower(leftClimberPID.calculate(getLeftClimberPosition())))
-        .until(leftClimberPID::atSetpoint);
+  /**
+   * Drives both hooks to the same position on a shared profile, leveling the robot by roll on the
+   * way. Keeps holding once there, so bind it while held.
+   */
+  public Command moveToPosition(double position) {
+    return run(this::followReference)
+        .beforeStarting(
+            () -> {
+              resetReference();
+              setGoal(position);
+            })
+        .finallyDo(
+            () -> {
+              setLeftPower(0);
+              setRightPower(0);
+            });
   }
 
-  public Command rightUp(double setpoint) {
-    setRightClimberSetpoint(setpoint);
-
-    return run(() -> setRightPower(rightClimberPID.calculate(getRightClimberPosition())))
-        .until(rightClimberPID::atSetpoint);
+  public Command extend() {
+    return moveToPosition(ClimberConstants.ClimberSetpoint.kFullExtend.position);
   }
 
-  public Command bothUp(double setpoint) {
-    setLeftClimberSetpoint(setpoint);
-    setRightClimberSetpoint(setpoint);
-
-    return run(() -> {
-          setLeftPower(leftClimberPID.calculate(getLeftClimberPosition()));
-          setRightPower(rightClimberPID.calculate(getRightClimberPosition()));
-        })
-        .until(() -> leftClimberPID.atSetpoint() && rightClimberPID.atSetpoint());
+  public Command climb() {
+    return moveToPosition(ClimberConstants.ClimberSetpoint.kRetracted.position);
   }
 
   // public Command zeroLeft() {
@@ -252,6 +379,6 @@ public class Climber extends SubsystemBase {
   public Command tuneControllers() {
     this.initTuning();
 
-    return run(this::tune);
+    return run(this::tune).beforeStarting(this::resetReference);
   }
 }
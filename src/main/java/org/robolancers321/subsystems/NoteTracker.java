@@ -0,0 +1,201 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
+import org.robolancers321.Constants.NoteTrackerConstants;
+import org.robolancers321.subsystems.intake.Sucker;
+import org.robolancers321.subsystems.launcher.Indexer;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.VirtualSubsystem;
+
+/**
+ * Single source of truth for where the note is in the superstructure. Consumes the edges the
+ * sucker touch sensor and both indexer beam breaks capture by interrupt once per loop, before the
+ * scheduler runs, and publishes the resulting state and its transitions as triggers. Transitions
+ * are stamped with the edge that caused them, and a note that crosses the exit beam entirely
+ * between two loops still counts as fired.
+ */
+public class NoteTracker extends VirtualSubsystem {
+  /*
+   * Singleton
+   */
+
+  private static NoteTracker instance = null;
+
+  public static NoteTracker getInstance() {
+    if (instance == null) instance = BootProfiler.time("NoteTracker", NoteTracker::new);
+
+    return instance;
+  }
+
+  /*
+   * Implementation
+   */
+
+  public enum NoteState {
+    kEmpty,
+    kInIntake,
+    kHandingOff,
+    kStaged,
+    kInShooter
+  }
+
+  // edges of one sensor seen since the previous loop
+  private static final class Edges {
+    private double lastActivatedTimestamp = Double.NaN;
+    private double lastDeactivatedTimestamp = Double.NaN;
+
+    private boolean activated = false;
+    private boolean deactivated = false;
+
+    // NaN never equals itself, so compare with the raw bits to spot a new edge
+    private static boolean isNew(double timestamp, double lastTimestamp) {
+      return Double.doubleToLongBits(timestamp) != Double.doubleToLongBits(lastTimestamp);
+    }
+
+    void update(double activatedTimestamp, double deactivatedTimestamp) {
+      this.activated = isNew(activatedTimestamp, this.lastActivatedTimestamp);
+      this.deactivated = isNew(deactivatedTimestamp, this.lastDeactivatedTimestamp);
+
+      this.lastActivatedTimestamp = activatedTimestamp;
+      this.lastDeactivatedTimestamp = deactivatedTimestamp;
+    }
+
+    // latest of this loop's edges and the given timestamp, NaN stands for none
+    double latestTimestamp(double timestamp) {
+      if (this.activated && !(timestamp >= this.lastActivatedTimestamp))
+        timestamp = this.lastActivatedTimestamp;
+
+      if (this.deactivated && !(timestamp >= this.lastDeactivatedTimestamp))
+        timestamp = this.lastDeactivatedTimestamp;
+
+      return timestamp;
+    }
+  }
+
+  private final Sucker sucker;
+  private final Indexer indexer;
+
+  private final Edges suckerEdges = new Edges();
+  private final Edges entranceEdges = new Edges();
+  private final Edges exitEdges = new Edges();
+
+  private NoteState state = NoteState.kEmpty;
+  private NoteState previousState = NoteState.kEmpty;
+  private double lastTransitionTimestamp = 0.0;
+  private boolean transitionedThisLoop = false;
+
+  private boolean suckerDetected = false;
+  private boolean entranceBroken = false;
+  private boolean exitBroken = false;
+
+  private NoteTracker() {
+    this.sucker = Sucker.getInstance();
+    this.indexer = Indexer.getInstance();
+  }
+
+  public NoteState getState() {
+    return this.state;
+  }
+
+  public NoteState getPreviousState() {
+    return this.previousState;
+  }
+
+  public double getSecondsInState() {
+    return Timer.getFPGATimestamp() - this.lastTransitionTimestamp;
+  }
+
+  /** True while the tracker is in any of the given states. */
+  public Trigger is(NoteState... noteStates) {
+    return new Trigger(
+        () -> {
+          for (NoteState noteState : noteStates) if (this.state == noteState) return true;
+
+          return false;
+        });
+  }
+
+  /** True for the single loop in which the note moved from one state to the other. */
+  public Trigger transitioned(NoteState from, NoteState to) {
+    return new Trigger(
+        () -> this.transitionedThisLoop && this.previousState == from && this.state == to);
+  }
+
+  /**
+   * True for the single loop in which a note left the exit beam and the launcher, including a note
+   * that crossed the beam entirely between two loops.
+   */
+  public Trigger noteFired() {
+    return this.transitioned(NoteState.kInShooter, NoteState.kEmpty);
+  }
+
+  private NoteState computeState() {
+    if (this.exitBroken) return NoteState.kInShooter;
+
+    if (this.entranceBroken)
+      return this.suckerDetected ? NoteState.kHandingOff : NoteState.kStaged;
+
+    if (this.suckerDetected) return NoteState.kInIntake;
+
+    // the note is between sensors while being handed off, hold the state briefly before giving up
+    if (this.state == NoteState.kHandingOff
+        && this.getSecondsInState() < NoteTrackerConstants.kHandoffTimeoutSeconds)
+      return NoteState.kHandingOff;
+
+    return NoteState.kEmpty;
+  }
+
+  private void transition(NoteState from, NoteState to, double timestamp) {
+    this.previousState = from;
+    this.state = to;
+    this.lastTransitionTimestamp = timestamp;
+    this.transitionedThisLoop = true;
+  }
+
+  private void doSendables() {
+    SmartDashboard.putString("note state", this.state.name());
+    SmartDashboard.putString("note previous state", this.previousState.name());
+  }
+
+  @Override
+  public void periodic() {
+    this.suckerEdges.update(
+        this.sucker.getNoteDetectedTimestamp(), this.sucker.getNoteReleasedTimestamp());
+    this.entranceEdges.update(
+        this.indexer.getEntranceBrokenTimestamp(), this.indexer.getEntranceClearedTimestamp());
+    this.exitEdges.update(
+        this.indexer.getExitBrokenTimestamp(), this.indexer.getExitClearedTimestamp());
+
+    // sample every sensor exactly once so all consumers agree on the same snapshot
+    this.suckerDetected = this.sucker.noteDetected();
+    this.entranceBroken = this.indexer.entranceBeamBroken();
+    this.exitBroken = this.indexer.exitBeamBroken();
+
+    this.transitionedThisLoop = false;
+
+    // the exit beam cleared with nothing behind it, so the note went through the shooter even if no
+    // loop ever saw it there
+    boolean passedExit = this.exitEdges.deactivated && !this.exitBroken && !this.entranceBroken;
+
+    if (passedExit && this.state != NoteState.kInShooter)
+      this.transition(this.state, NoteState.kInShooter, this.exitEdges.lastActivatedTimestamp);
+
+    NoteState nextState = this.computeState();
+
+    if (nextState != this.state) {
+      double timestamp =
+          this.exitEdges.latestTimestamp(
+              this.entranceEdges.latestTimestamp(this.suckerEdges.latestTimestamp(Double.NaN)));
+
+      // only the handoff timeout changes state without an edge
+      if (Double.isNaN(timestamp)) timestamp = Timer.getFPGATimestamp();
+
+      this.transition(this.state, nextState, timestamp);
+    }
+
+    this.doSendables();
+  }
+}
@@ -0,0 +1,224 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleLogEntry;
+import edu.wpi.first.wpilibj.DataLogManager;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import org.robolancers321.Constants.ShotLoggerConstants;
+import org.robolancers321.subsystems.drivetrain.Drivetrain;
+import org.robolancers321.subsystems.launcher.Flywheel;
+import org.robolancers321.subsystems.launcher.Indexer;
+import org.robolancers321.subsystems.launcher.Pivot;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.VirtualSubsystem;
+
+/**
+ * Detects each shot from the indexer exit beam clearing while feeding forward, then waits for the
+ * flywheel to finish measuring the resulting dip and recovery before writing one record per shot
+ * to the data log.
+ */
+public class ShotLogger extends VirtualSubsystem {
+  /*
+   * Singleton
+   */
+
+  private static ShotLogger instance = null;
+
+  public static ShotLogger getInstance() {
+    if (instance == null) instance = BootProfiler.time("ShotLogger", ShotLogger::new);
+
+    return instance;
+  }
+
+  /*
+   * Implementation
+   */
+
+  private final Drivetrain drivetrain;
+  private final Pivot pivot;
+  private final Indexer indexer;
+  private final Flywheel flywheel;
+
+  private final DoubleLogEntry distanceEntry;
+  private final DoubleLogEntry pivotAngleEntry;
+  private final DoubleLogEntry goalRPMEntry;
+  private final DoubleLogEntry actualRPMEntry;
+  private final DoubleLogEntry transitEntry;
+  private final DoubleLogEntry dipEntry;
+  private final DoubleLogEntry recoveryEntry;
+  private final DoubleLogEntry timeToFireEntry;
+
+  private double lastSeenExitClearedTimestamp = Double.NaN;
+  private double requestTimestamp = Double.NaN;
+
+  // the shot currently waiting on the flywheel to recover
+  private boolean pending = false;
+  private double releaseTimestamp;
+  private double distance;
+  private double pivotAngle;
+  private double goalRPM;
+  private double actualRPM;
+  private double transitSeconds;
+  private double timeToFireSeconds;
+  private int recoveryCountAtRelease;
+  private double dipRPM;
+  private double recoverySeconds;
+
+  // rolling summary over the most recent shots
+  private final double[] recentDips = new double[ShotLoggerConstants.kSummaryWindow];
+  private final double[] recentRecoveries = new double[ShotLoggerConstants.kSummaryWindow];
+  private final double[] recentTransits = new double[ShotLoggerConstants.kSummaryWindow];
+  private int shotCount = 0;
+
+  private ShotLogger() {
+    this.drivetrain = Drivetrain.getInstance();
+    this.pivot = Pivot.getInstance();
+    this.indexer = Indexer.getInstance();
+    this.flywheel = Flywheel.getInstance();
+
+    DataLog log = DataLogManager.getLog();
+
+    this.distanceEntry = new DoubleLogEntry(log, "shots/distance (m)");
+    this.pivotAngleEntry = new DoubleLogEntry(log, "shots/pivot angle (deg)");
+    this.goalRPMEntry = new DoubleLogEntry(log, "shots/goal rpm");
+    this.actualRPMEntry = new DoubleLogEntry(log, "shots/actual rpm");
+    this.transitEntry = new DoubleLogEntry(log, "shots/transit (s)");
+    this.dipEntry = new DoubleLogEntry(log, "shots/dip (rpm)");
+    this.recoveryEntry = new DoubleLogEntry(log, "shots/recovery (s)");
+    this.timeToFireEntry = new DoubleLogEntry(log, "shots/time to fire (s)");
+  }
+
+  /**
+   * Stamps the moment the driver asked for a shot, used for the time to fire measurement. Put it at
+   * the start of the command that shoots, so the stamp does not depend on how that command ends.
+   */
+  public Command markShotRequested() {
+    return Commands.runOnce(() -> this.requestTimestamp = Timer.getFPGATimestamp());
+  }
+
+  private void startShot(double exitClearedTimestamp) {
+    this.pending = true;
+    this.releaseTimestamp = exitClearedTimestamp;
+
+    this.distance = this.drivetrain.getDistanceToSpeaker();
+    this.pivotAngle = this.pivot.getPositionDeg();
+    this.goalRPM = this.flywheel.getGoalRPM();
+    this.actualRPM = this.flywheel.getRPM();
+
+    // trailing edge of the note travelling from one beam break to the other
+    this.transitSeconds = exitClearedTimestamp - this.indexer.getEntranceClearedTimestamp();
+
+    this.timeToFireSeconds =
+        exitClearedTimestamp - this.requestTimestamp < ShotLoggerConstants.kMaxRequestAgeSeconds
+            ? exitClearedTimestamp - this.requestTimestamp
+            : Double.NaN;
+    this.requestTimestamp = Double.NaN;
+
+    this.recoveryCountAtRelease = this.flywheel.getRecoveryCount();
+    this.dipRPM = Double.NaN;
+    this.recoverySeconds = Double.NaN;
+  }
+
+  private void updateShot() {
+    // the flywheel measures every dip itself, the first one it recovers from is this shot's
+    if (this.flywheel.getRecoveryCount() != this.recoveryCountAtRelease) {
+      this.dipRPM = this.flywheel.getLastDipRPM();
+      this.recoverySeconds = this.flywheel.getLastRecoverySeconds();
+      this.finishShot();
+
+      return;
+    }
+
+    // a new goal means the flywheel is no longer trying to hold the shot speed
+    boolean goalChanged = this.flywheel.getGoalRPM() != this.goalRPM;
+    boolean timedOut =
+        Timer.getFPGATimestamp() - this.releaseTimestamp
+            > ShotLoggerConstants.kRecoveryTimeoutSeconds;
+
+    if (!goalChanged && !timedOut) return;
+
+    // never left tolerance, so there was nothing to recover from
+    if (!goalChanged && !this.flywheel.isRecovering() && this.flywheel.isRevved()) {
+      this.dipRPM = 0.0;
+      this.recoverySeconds = 0.0;
+    }
+
+    this.finishShot();
+  }
+
+  private void finishShot() {
+    this.pending = false;
+
+    this.distanceEntry.append(this.distance);
+    this.pivotAngleEntry.append(this.pivotAngle);
+    this.goalRPMEntry.append(this.goalRPM);
+    this.actualRPMEntry.append(this.actualRPM);
+    this.transitEntry.append(this.transitSeconds);
+    this.dipEntry.append(this.dipRPM);
+    this.recoveryEntry.append(this.recoverySeconds);
+    this.timeToFireEntry.append(this.timeToFireSeconds);
+
+    int slot = this.shotCount % ShotLoggerConstants.kSummaryWindow;
+
+    this.recentDips[slot] = this.dipRPM;
+    this.recentRecoveries[slot] = this.recoverySeconds;
+    this.recentTransits[slot] = this.transitSeconds;
+    this.shotCount++;
+
+    SmartDashboard.putNumber("shot last distance (m)", this.distance);
+    SmartDashboard.putNumber("shot last pivot angle (deg)", this.pivotAngle);
+    SmartDashboard.putNumber("shot last goal rpm", this.goalRPM);
+    SmartDashboard.putNumber("shot last actual rpm", this.actualRPM);
+    SmartDashboard.putNumber("shot last transit (s)", this.transitSeconds);
+    SmartDashboard.putNumber("shot last dip (rpm)", this.dipRPM);
+    SmartDashboard.putNumber("shot last recovery (s)", this.recoverySeconds);
+    SmartDashboard.putNumber("shot last time to fire (s)", this.timeToFireSeconds);
+
+    SmartDashboard.putNumber("shot count", this.shotCount);
+    SmartDashboard.putNumber("shot avg dip (rpm)", this.recentAverage(this.recentDips));
+    SmartDashboard.putNumber("shot avg recovery (s)", this.recentAverage(this.recentRecoveries));
+    SmartDashboard.putNumber("shot avg transit (s)", this.recentAverage(this.recentTransits));
+  }
+
+  // mean of the filled part of the window, skipping shots where a value could not be measured
+  private double recentAverage(double[] values) {
+    int filled = Math.min(this.shotCount, values.length);
+
+    double sum = 0.0;
+    int count = 0;
+
+    for (int i = 0; i < filled; i++) {
+      if (Double.isNaN(values[i])) continue;
+
+      sum += values[i];
+      count++;
+    }
+
+    return count == 0 ? Double.NaN : sum / count;
+  }
+
+  @Override
+  public void periodic() {
+    double exitClearedTimestamp = this.indexer.getExitClearedTimestamp();
+
+    // NaN never equals itself, so compare with the raw bits to spot a new edge
+    boolean newEdge =
+        Double.doubleToLongBits(exitClearedTimestamp)
+            != Double.doubleToLongBits(this.lastSeenExitClearedTimestamp);
+
+    this.lastSeenExitClearedTimestamp = exitClearedTimestamp;
+
+    // shifting back also clears the exit beam, only count the note leaving forward
+    if (newEdge && this.indexer.getGoalRPM() > 0.0 && this.flywheel.getGoalRPM() > 0.0) {
+      if (this.pending) this.finishShot();
+
+      this.startShot(exitClearedTimestamp);
+    }
+
+    if (this.pending) this.updateShot();
+  }
+}
@@ -0,0 +1,95 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.wpilibj.Notifier;
+import java.util.Optional;
+import java.util.Queue;
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.PhotonCamera;
+import org.photonvision.PhotonPoseEstimator;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.robolancers321.Constants.DrivetrainConstants;
+import org.robolancers321.util.Assets;
+
+/**
+ * One AprilTag camera with its own pose estimator, polled on its own notifier thread so solving a
+ * frame never holds up the main loop or the other cameras. Every new estimate is handed to a queue
+ * shared by all cameras, which the main loop drains.
+ */
+public class AprilTagCamera {
+  /** A field pose solved from one frame of one camera. */
+  public record Estimate(String camera, Pose2d pose, double timestampSeconds, int tagCount) {}
+
+  private final String name;
+  private final Transform3d robotToCamera;
+  private final PhotonCamera camera;
+  private final PhotonPoseEstimator estimator;
+  private final Queue<Estimate> estimates;
+  private final Notifier pollLoop;
+
+  // only touched from the poll thread
+  private double lastFrameTimestamp = Double.NEGATIVE_INFINITY;
+
+  private volatile boolean seesTag = false;
+
+  public AprilTagCamera(String name, Transform3d robotToCamera, Queue<Estimate> estimates) {
+    this.name = name;
+    this.robotToCamera = robotToCamera;
+    this.camera = new PhotonCamera(name);
+    this.estimator =
+        new PhotonPoseEstimator(
+            Assets.aprilTagLayout.join(),
+            PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+            this.camera,
+            robotToCamera);
+    this.estimates = estimates;
+
+    this.pollLoop = new Notifier(this::poll);
+    this.pollLoop.setName(name + " Pose Estimator");
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public Transform3d getRobotToCamera() {
+    return this.robotToCamera;
+  }
+
+  public PhotonCamera getPhotonCamera() {
+    return this.camera;
+  }
+
+  public void start() {
+    this.pollLoop.startPeriodic(DrivetrainConstants.kVisionPollPeriodSeconds);
+  }
+
+  public boolean seesTag() {
+    return this.seesTag;
+  }
+
+  private void poll() {
+    PhotonPipelineResult result = this.camera.getLatestResult();
+
+    double frameTimestamp = result.getTimestampSeconds();
+
+    if (frameTimestamp <= this.lastFrameTimestamp) return;
+
+    this.lastFrameTimestamp = frameTimestamp;
+    this.seesTag = result.hasTargets();
+
+    Optional<EstimatedRobotPose> estimate = this.estimator.update(result);
+
+    if (estimate.isEmpty()) return;
+
+    this.estimates.add(
+        new Estimate(
+            this.name,
+            estimate.get().estimatedPose.toPose2d(),
+            estimate.get().timestampSeconds,
+            estimate.get().targetsUsed.size()));
+  }
+}
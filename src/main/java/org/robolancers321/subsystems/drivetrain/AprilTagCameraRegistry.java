@@ -0,0 +1,94 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.robolancers321.subsystems.drivetrain.AprilTagCamera.Estimate;
+
+/**
+ * Every AprilTag camera on the robot, built from a config file listing each camera's name and
+ * robot to camera transform. The cameras solve frames on their own threads, and the main loop
+ * drains whatever they produced since the last loop in capture order, so the pose estimator always
+ * sees measurements oldest first no matter which camera finished first.
+ */
+public class AprilTagCameraRegistry {
+  private final List<AprilTagCamera> cameras = new ArrayList<>();
+  private final Queue<Estimate> estimates = new ConcurrentLinkedQueue<>();
+
+  private AprilTagCameraRegistry() {}
+
+  /** A registry with a single camera, for when there is no config to read. */
+  public static AprilTagCameraRegistry of(String name, Transform3d robotToCamera) {
+    AprilTagCameraRegistry registry = new AprilTagCameraRegistry();
+
+    registry.add(name, robotToCamera);
+
+    return registry;
+  }
+
+  /**
+   * Builds the cameras from a parsed config of the form {"cameras": [{"name", "x", "y", "z",
+   * "rollDeg", "pitchDeg", "yawDeg"}]}, with the translation in meters from the robot center.
+   */
+  public static AprilTagCameraRegistry fromConfig(JsonNode root) throws IOException {
+    JsonNode camerasNode = root.get("cameras");
+
+    if (camerasNode == null || camerasNode.size() == 0)
+      throw new IOException("No cameras listed in the camera config");
+
+    AprilTagCameraRegistry registry = new AprilTagCameraRegistry();
+
+    for (JsonNode cameraNode : camerasNode) {
+      Transform3d robotToCamera =
+          new Transform3d(
+              cameraNode.get("x").asDouble(),
+              cameraNode.get("y").asDouble(),
+              cameraNode.get("z").asDouble(),
+              new Rotation3d(
+                  Math.toRadians(cameraNode.get("rollDeg").asDouble()),
+                  Math.toRadians(cameraNode.get("pitchDeg").asDouble()),
+                  Math.toRadians(cameraNode.get("yawDeg").asDouble())));
+
+      registry.add(cameraNode.get("name").asText(), robotToCamera);
+    }
+
+    return registry;
+  }
+
+  private void add(String name, Transform3d robotToCamera) {
+    this.cameras.add(new AprilTagCamera(name, robotToCamera, this.estimates));
+  }
+
+  public void start() {
+    for (AprilTagCamera camera : this.cameras) camera.start();
+  }
+
+  public List<AprilTagCamera> getCameras() {
+    return Collections.unmodifiableList(this.cameras);
+  }
+
+  public boolean seesTag() {
+    for (AprilTagCamera camera : this.cameras) if (camera.seesTag()) return true;
+
+    return false;
+  }
+
+  /** Moves every estimate produced since the last call into out, oldest capture first. */
+  public void drainEstimates(List<Estimate> out) {
+    out.clear();
+
+    Estimate estimate;
+
+    while ((estimate = this.estimates.poll()) != null) out.add(estimate);
+
+    out.sort(Comparator.comparingDouble(Estimate::timestampSeconds));
+  }
+}
@@ -2,6 +2,7 @@
 package org.robolancers321.subsystems.drivetrain;
 
 import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.path.GoalEndState;
 import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.util.GeometryUtil;
 import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
@@ -9,35 +10,48 @@ import com.pathplanner.lib.util.PIDConstants;
 import com.pathplanner.lib.util.PathPlannerLogging;
 import com.pathplanner.lib.util.ReplanningConfig;
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.HolonomicDriveController;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.math.util.Units;
-import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine.Config;
-import java.io.File;
 import java.io.IOException;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
-import org.photonvision.EstimatedRobotPose;
+import java.util.function.Supplier;
 import org.photonvision.PhotonCamera;
-import org.photonvision.PhotonPoseEstimator;
-import org.photonvision.PhotonPoseEstimator.PoseStrategy;
 import org.photonvision.targeting.PhotonPipelineResult;
 import org.photonvision.targeting.PhotonTrackedTarget;
 import org.robolancers321.Constants;
 import org.robolancers321.Constants.DrivetrainConstants;
+import org.robolancers321.subsystems.drivetrain.AprilTagCamera.Estimate;
+import org.robolancers321.subsystems.drivetrain.FieldNoteTracker.TrackedNote;
+import org.robolancers321.subsystems.drivetrain.NoteTrajectoryGenerator.TimedTrajectory;
+import org.robolancers321.subsystems.launcher.AimPredictor;
+import org.robolancers321.util.Assets;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.FieldLayout;
+import org.robolancers321.util.FieldLayout.Landmark;
 import org.robolancers321.util.MathUtils;
+import org.robolancers321.util.MonitoredSubsystem;
 import org.robolancers321.util.MyAlliance;
 import swervelib.SwerveDrive;
 import swervelib.SwerveDriveTest;
@@ -48,7 +62,7 @@ import swervelib.parser.SwerveParser;
 import swervelib.telemetry.SwerveDriveTelemetry;
 import swervelib.telemetry.SwerveDriveTelemetry.TelemetryVerbosity;
 
-public class Drivetrain extends SubsystemBase {
+public class Drivetrain extends MonitoredSubsystem {
   /*
    * Singleton
    */
@@ -57,7 +71,7 @@ public class Drivetrain extends SubsystemBase {
 
   public static Drivetrain getInstance() {
     if (instance == null)
-      try {
+      try (BootProfiler.Span span = BootProfiler.span("Drivetrain")) {
         instance = new Drivetrain();
       } catch (IOException e) {
         e.printStackTrace();
@@ -68,38 +82,112 @@ public class Drivetrain extends SubsystemBase {
 
   private SwerveDrive swerveDrive;
 
-  private final PhotonCamera mainCamera;
   private final PhotonCamera noteCamera;
 
-  private final PhotonPoseEstimator visionEstimator;
+  private AprilTagCameraRegistry aprilTagCameras;
+  private final List<Estimate> visionEstimates = new ArrayList<>();
   private Field2d visionField;
+  private VisionSim visionSim;
+
+  // a pose the flow field drives to in blue coordinates, id is -1 without a navgrid
+  private record FlowFieldTarget(Pose2d pose, int id) {}
+
+  private FlowField flowField = null;
+
+  // [landmark][index], null for landmarks the robot never drives to
+  private final FlowFieldTarget[][] flowFieldTargets =
+      new FlowFieldTarget[Landmark.values().length][];
+
+  private final PoseHistory poseHistory = new PoseHistory(DrivetrainConstants.kPoseHistoryCapacity);
+  private final PoseHistory.Sample historySample = new PoseHistory.Sample();
+
+  private final VisionJumpGate visionJumpGate =
+      new VisionJumpGate(
+          DrivetrainConstants.kVisionMaxPoseJumpMeters,
+          DrivetrainConstants.kVisionJumpAgreementMeters,
+          DrivetrainConstants.kVisionJumpConfirmCount);
+
+  private final FieldNoteTracker fieldNoteTracker = new FieldNoteTracker();
+
+  private final NoteTrajectoryGenerator noteTrajectoryGenerator = new NoteTrajectoryGenerator();
+  private final HolonomicDriveController noteChaseController;
+  private final ProfiledPIDController aimHeadingController;
+
+  private final FieldLayout fieldLayout = FieldLayout.getInstance();
+
+  private final SwerveSetpointGenerator setpointGenerator =
+      new SwerveSetpointGenerator(
+          DrivetrainConstants.kModuleXMeters,
+          DrivetrainConstants.kModuleYMeters,
+          DrivetrainConstants.kMaxSpeedMetersPerSecond,
+          DrivetrainConstants.kMaxModuleAcceleration,
+          DrivetrainConstants.kMaxSteerRate);
+
+  private final TractionMonitor tractionMonitor =
+      new TractionMonitor(DrivetrainConstants.kModuleXMeters, DrivetrainConstants.kModuleYMeters);
+
+  // scratch for the traction monitor
+  private final double[] moduleSpeeds = new double[DrivetrainConstants.kModuleXMeters.length];
+  private final double[] moduleAnglesRad = new double[DrivetrainConstants.kModuleXMeters.length];
+  private final boolean[] moduleCurrentLimited =
+      new boolean[DrivetrainConstants.kModuleXMeters.length];
+  private double lastTractionYawRad = Double.NaN;
+  private double lastTractionTimestamp = Double.NaN;
+
+  // latest requested robot relative speeds, stepped toward every loop
+  private double desiredVx = 0.0;
+  private double desiredVy = 0.0;
+  private double desiredOmega = 0.0;
+  private double lastSetpointTimestamp = Double.NaN;
+  private boolean droveSincePeriodic = false;
 
   private Drivetrain() throws IOException {
 
-    File swerveJsonDirectory = new File(Filesystem.getDeployDirectory(), "swerve");
-    swerveDrive =
-        new SwerveParser(swerveJsonDirectory)
-            .createSwerveDrive(Constants.DrivetrainConstants.kMaxSpeedMetersPerSecond);
+    try (BootProfiler.Span span = BootProfiler.span("createSwerveDrive")) {
+      swerveDrive =
+          Assets.swerveParser
+              .get()
+              .createSwerveDrive(Constants.DrivetrainConstants.kMaxSpeedMetersPerSecond);
+    }
 
     SwerveDriveTelemetry.verbosity = TelemetryVerbosity.HIGH;
 
-    this.mainCamera = new PhotonCamera(DrivetrainConstants.kMainCameraName);
     this.noteCamera = new PhotonCamera(DrivetrainConstants.kNoteCameraName);
 
-    this.visionEstimator =
-        new PhotonPoseEstimator(
-            DrivetrainConstants.kAprilTagFieldLayout,
-            PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
-            mainCamera,
-            DrivetrainConstants.kRobotToCameraTransform);
-
     this.visionField = new Field2d();
 
+    this.noteChaseController =
+        new HolonomicDriveController(
+            new PIDController(DrivetrainConstants.kTranslationP, 0.0, 0.0),
+            new PIDController(DrivetrainConstants.kTranslationP, 0.0, 0.0),
+            new ProfiledPIDController(
+                DrivetrainConstants.kRotationP,
+                0.0,
+                0.0,
+                new TrapezoidProfile.Constraints(
+                    DrivetrainConstants.kMaxOmegaRadiansPerSecond,
+                    2.0 * DrivetrainConstants.kMaxOmegaRadiansPerSecond)));
+    this.noteChaseController.getThetaController().enableContinuousInput(-Math.PI, Math.PI);
+
+    this.aimHeadingController =
+        new ProfiledPIDController(
+            DrivetrainConstants.kAimHeadingP,
+            0.0,
+            DrivetrainConstants.kAimHeadingD,
+            new TrapezoidProfile.Constraints(
+                DrivetrainConstants.kMaxOmegaRadiansPerSecond,
+                DrivetrainConstants.kAimMaxAngularAcceleration));
+    this.aimHeadingController.enableContinuousInput(-Math.PI, Math.PI);
+
     this.configureGyro();
-    this.configurePathPlanner();
+    BootProfiler.run("configurePathPlanner", this::configurePathPlanner);
+    BootProfiler.run("configureFlowField", this::configureFlowField);
+    BootProfiler.run("configureVision", this::configureVision);
     this.configureField();
     this.configureSwerve();
 
+    if (RobotBase.isSimulation()) this.configureSimulation();
+
     // this.swerveDrive.setHeadingCorrection(true);
 
   }
@@ -162,6 +250,96 @@ public class Drivetrain extends SubsystemBase {
         this);
   }
 
+  private void configureFlowField() {
+    try {
+      this.flowField = Assets.navGrid.get();
+    } catch (IOException e) {
+      DriverStation.reportWarning(
+          "Could not load navgrid, falling back to pathfinding: " + e.getMessage(), false);
+    }
+
+    FlowFieldTarget[] traps = new FlowFieldTarget[this.fieldLayout.count(Landmark.kTrap)];
+
+    for (int i = 0; i < traps.length; i++)
+      traps[i] = this.addFlowFieldTarget(this.fieldLayout.getBluePose(Landmark.kTrap, i));
+
+    this.flowFieldTargets[Landmark.kTrap.ordinal()] = traps;
+
+    // bumpers against the subwoofer, facing away so the launcher points at the speaker
+    Pose2d speaker = this.fieldLayout.getBluePose(Landmark.kSpeaker, 0);
+    Translation2d subwoofer =
+        new Translation2d(
+            FieldLayout.kSubwooferDepthMeters + 0.5 * DrivetrainConstants.kBumperLengthMeters,
+            speaker.getRotation());
+
+    this.flowFieldTargets[Landmark.kSpeaker.ordinal()] =
+        new FlowFieldTarget[] {
+          this.addFlowFieldTarget(
+              new Pose2d(speaker.getTranslation().plus(subwoofer), speaker.getRotation()))
+        };
+
+    // where AmpAlign starts, so the handoff into the path is seamless
+    this.flowFieldTargets[Landmark.kAmp.ordinal()] =
+        new FlowFieldTarget[] {
+          this.addFlowFieldTarget(Assets.getPath("AmpAlign").getPreviewStartingHolonomicPose())
+        };
+
+    // back off the source slot by half the robot so the bumpers stop at the wall, facing it
+    Pose2d source = this.fieldLayout.getBluePose(Landmark.kSource, 0);
+    Translation2d standoff =
+        new Translation2d(0.5 * DrivetrainConstants.kBumperLengthMeters, source.getRotation());
+
+    this.flowFieldTargets[Landmark.kSource.ordinal()] =
+        new FlowFieldTarget[] {
+          this.addFlowFieldTarget(
+              new Pose2d(
+                  source.getTranslation().plus(standoff),
+                  source.getRotation().plus(Rotation2d.fromDegrees(180.0))))
+        };
+  }
+
+  private FlowFieldTarget addFlowFieldTarget(Pose2d pose) {
+    if (this.flowField == null) return new FlowFieldTarget(pose, -1);
+
+    return new FlowFieldTarget(pose, this.flowField.addTarget(pose.getTranslation()));
+  }
+
+  private void configureVision() {
+    try {
+      this.aprilTagCameras = AprilTagCameraRegistry.fromConfig(Assets.cameraConfig.get());
+    } catch (IOException e) {
+      DriverStation.reportWarning(
+          "Could not load camera config, falling back to the main camera: " + e.getMessage(),
+          false);
+
+      this.aprilTagCameras =
+          AprilTagCameraRegistry.of(
+              DrivetrainConstants.kMainCameraName, DrivetrainConstants.kRobotToCameraTransform);
+    }
+
+    this.aprilTagCameras.start();
+  }
+
+  private void configureSimulation() {
+    this.visionSim = new VisionSim();
+
+    for (AprilTagCamera camera : this.aprilTagCameras.getCameras())
+      this.visionSim.addTagCamera(
+          camera.getPhotonCamera(),
+          camera.getRobotToCamera(),
+          VisionSim.cameraProperties(DrivetrainConstants.kSimTagCameraFovDeg));
+
+    this.visionSim.addNoteCamera(
+        this.noteCamera,
+        DrivetrainConstants.kRobotToNoteCameraTransform,
+        VisionSim.cameraProperties(DrivetrainConstants.kSimNoteCameraFovDeg));
+
+    for (int i = 0; i < this.fieldLayout.count(Landmark.kNote); i++)
+      this.visionSim.addNote(this.fieldLayout.getPose(Landmark.kNote, i).getTranslation());
+
+    SmartDashboard.putData("Vision Sim Field", this.visionSim.getDebugField());
+  }
+
   private void configureField() {
     SmartDashboard.putData("Vision Field", this.visionField);
 
@@ -177,18 +355,40 @@ public class Drivetrain extends SubsystemBase {
     return this.swerveDrive.getYaw().getDegrees();
   }
 
+  public double getRollDeg() {
+    return this.swerveDrive.getRoll().getDegrees();
+  }
+
   public Pose2d getPose() {
     return this.swerveDrive.getPose();
   }
 
   public void resetPose(Pose2d pose) {
     this.swerveDrive.resetOdometry(pose);
+
+    // interpolating across the reset would blend two unrelated poses
+    this.poseHistory.clear();
+  }
+
+  private void recordPose() {
+    this.poseHistory.add(Timer.getFPGATimestamp(), this.getPose(), this.getChassisSpeeds());
+  }
+
+  /** Where odometry had the robot at a past timestamp, for lining up delayed camera frames. */
+  public Pose2d getPoseAt(double timestamp) {
+    if (!this.poseHistory.sample(timestamp, this.historySample)) return this.getPose();
+
+    return this.historySample.toPose2d();
   }
 
   private SwerveModuleState[] getModuleStates() {
     return this.swerveDrive.getStates();
   }
 
+  public ChassisSpeeds getFieldVelocity() {
+    return this.swerveDrive.getFieldVelocity();
+  }
+
   public ChassisSpeeds getChassisSpeeds() {
     return DrivetrainConstants.kSwerveKinematics.toChassisSpeeds(this.getModuleStates());
   }
@@ -198,48 +398,93 @@ public class Drivetrain extends SubsystemBase {
   }
 
   public boolean seesTag() {
-    return this.mainCamera.getLatestResult().hasTargets();
+    return this.aprilTagCameras.seesTag();
   }
 
   private void fuseVision() {
-    Optional<EstimatedRobotPose> visionEstimate = visionEstimator.update();
-
-    if (visionEstimate.isEmpty()) return;
-
-    visionField.setRobotPose(visionEstimate.get().estimatedPose.toPose2d());
+    this.aprilTagCameras.drainEstimates(this.visionEstimates);
 
-    this.swerveDrive.addVisionMeasurement(
-        visionEstimate.get().estimatedPose.toPose2d(), visionEstimate.get().timestampSeconds);
+    for (Estimate estimate : this.visionEstimates) this.fuseVisionEstimate(estimate);
 
-    SmartDashboard.putNumber("vision estimate x", visionEstimate.get().estimatedPose.getX());
-    SmartDashboard.putNumber("vision estimate y", visionEstimate.get().estimatedPose.getY());
-    SmartDashboard.putNumber("vision estimate z", visionEstimate.get().estimatedPose.getZ());
+    SmartDashboard.putNumber("vision estimates this loop", this.visionEstimates.size());
   }
 
-  private Translation2d getSpeakerPosition() {
-    return MyAlliance.isRed() ? new Translation2d(16.53, 5.55) : new Translation2d(0.0, 5.55);
+  private void fuseVisionEstimate(Estimate estimate) {
+    Pose2d estimatedPose = estimate.pose();
+
+    // gate jumps while driving, but let everything through while disabled so the robot can
+    // relocalize before a match
+    if (!DriverStation.isDisabled()
+        && this.poseHistory.sample(estimate.timestampSeconds(), this.historySample)
+        && !this.visionJumpGate.accept(
+            estimatedPose.getX(),
+            estimatedPose.getY(),
+            this.historySample.x,
+            this.historySample.y,
+            this.tractionMonitor.anySlipping()))
+      return;
+
+    this.visionField.getObject(estimate.camera()).setPose(estimatedPose);
+    this.visionField.setRobotPose(estimatedPose);
+
+    if (this.tractionMonitor.anySlipping())
+      this.swerveDrive.addVisionMeasurement(
+          estimatedPose,
+          estimate.timestampSeconds(),
+          VecBuilder.fill(
+              DrivetrainConstants.kSlipVisionStdDevMeters,
+              DrivetrainConstants.kSlipVisionStdDevMeters,
+              DrivetrainConstants.kSlipVisionStdDevRad));
+    else this.swerveDrive.addVisionMeasurement(estimatedPose, estimate.timestampSeconds());
+
+    SmartDashboard.putNumber("vision estimate x", estimatedPose.getX());
+    SmartDashboard.putNumber("vision estimate y", estimatedPose.getY());
   }
 
-  private double getAngleToSpeaker() {
-    Translation2d speakerLocation = this.getSpeakerPosition();
+  private void updateTraction() {
+    double timestamp = Timer.getFPGATimestamp();
+    double yawRad = this.swerveDrive.getYaw().getRadians();
+
+    double dt = timestamp - this.lastTractionTimestamp;
+    double yawRate = dt > 0.0 ? MathUtil.angleModulus(yawRad - this.lastTractionYawRad) / dt : 0.0;
+
+    this.lastTractionTimestamp = timestamp;
+    this.lastTractionYawRad = yawRad;
+
+    if (!(dt > 0.0)) return;
+
+    SwerveModule[] modules = this.swerveDrive.getModules();
+
+    for (int i = 0; i < modules.length; i++) {
+      SwerveModuleState state = modules[i].getState();
+
+      this.moduleSpeeds[i] = state.speedMetersPerSecond;
+      this.moduleAnglesRad[i] = state.angle.getRadians();
+    }
+
+    this.tractionMonitor.update(this.moduleSpeeds, this.moduleAnglesRad, yawRate, dt);
 
-    double angle =
-        -180
-            + speakerLocation.minus(this.getPose().getTranslation()).getAngle().getDegrees()
-            - this.getYawDeg();
+    // only touch the motor config when a module changes state, it is a blocking can call
+    for (int i = 0; i < modules.length; i++) {
+      boolean slipping = this.tractionMonitor.isSlipping(i);
 
-    if (!MyAlliance.isRed()) return angle;
+      if (slipping == this.moduleCurrentLimited[i]) continue;
 
-    double x = Math.cos(angle * Math.PI / 180);
-    double y = Math.sin(angle * Math.PI / 180);
+      modules[i]
+          .getDriveMotor()
+          .setCurrentLimit(
+              slipping
+                  ? DrivetrainConstants.kSlipCurrentLimit
+                  : DrivetrainConstants.kDriveCurrentLimit);
 
-    return -Math.atan2(y, -x) * 180 / Math.PI;
+      this.moduleCurrentLimited[i] = slipping;
+    }
   }
 
   public double getDistanceToSpeaker() {
-    Translation2d speakerLocation = this.getSpeakerPosition();
+    Pose2d pose = this.getPose();
 
-    return this.getPose().getTranslation().getDistance(speakerLocation);
+    return this.fieldLayout.distanceTo(Landmark.kSpeaker, 0, pose.getX(), pose.getY());
   }
 
   public class TrapPose {
@@ -266,37 +511,20 @@ public class Drivetrain extends SubsystemBase {
   }
 
   public TrapPose getClosestTrapPosition() {
-    Pose2d[] blueTrapPoses = {
-      new Pose2d(new Translation2d(3.835, 2.29), Rotation2d.fromDegrees(-120)),
-      new Pose2d(new Translation2d(3.835, 5.91), Rotation2d.fromDegrees(120)),
-      new Pose2d(new Translation2d(6.97, 4.1), Rotation2d.fromDegrees(0))
-    };
-
-    Pose2d[] redTrapPoses = {
-      GeometryUtil.flipFieldPose(
-          new Pose2d(new Translation2d(3.835, 2.29), Rotation2d.fromDegrees(-120))),
-      GeometryUtil.flipFieldPose(
-          new Pose2d(new Translation2d(3.835, 5.91), Rotation2d.fromDegrees(120))),
-      GeometryUtil.flipFieldPose(
-          new Pose2d(new Translation2d(6.97, 4.1), Rotation2d.fromDegrees(0)))
-    };
-
-    Pose2d[] trapPosesForTeam = MyAlliance.isRed() ? redTrapPoses : blueTrapPoses;
-
-    TrapPose closestPose = new TrapPose();
-
-    for (int i = 0; i < trapPosesForTeam.length; i++) {
-      double distance =
-          trapPosesForTeam[i].getTranslation().getDistance(this.getPose().getTranslation());
-
-      if (distance < closestPose.getDistance())
-        closestPose = new TrapPose(distance, trapPosesForTeam[i]);
-    }
+    Pose2d pose = this.getPose();
+
+    int closest = this.fieldLayout.nearest(Landmark.kTrap, pose.getX(), pose.getY());
+
+    return new TrapPose(
+        this.fieldLayout.distanceTo(Landmark.kTrap, closest, pose.getX(), pose.getY()),
+        this.fieldLayout.getPose(Landmark.kTrap, closest));
+  }
 
-    SmartDashboard.putNumber("Closest Trap Pose Dist", closestPose.distance);
-    SmartDashboard.putString("Closest Trap Pose", closestPose.pose.toString());
+  /** Same as getClosestTrapPosition without allocating, for periodic callers. */
+  public double getDistanceToClosestTrap() {
+    Pose2d pose = this.getPose();
 
-    return closestPose;
+    return this.fieldLayout.distanceToNearest(Landmark.kTrap, pose.getX(), pose.getY());
   }
 
   public void driveRobotRelative(ChassisSpeeds speeds) {
@@ -310,7 +538,48 @@ public class Drivetrain extends SubsystemBase {
   }
 
   public void drive(double forward, double strafe, double rotate, boolean fieldRelative) {
-    this.swerveDrive.drive(new Translation2d(forward, strafe), rotate, fieldRelative, false);
+    if (fieldRelative) {
+      double heading = this.swerveDrive.getOdometryHeading().getRadians();
+      double cos = Math.cos(heading);
+      double sin = Math.sin(heading);
+
+      this.desiredVx = forward * cos + strafe * sin;
+      this.desiredVy = -forward * sin + strafe * cos;
+    } else {
+      this.desiredVx = forward;
+      this.desiredVy = strafe;
+    }
+
+    this.desiredOmega = rotate;
+
+    this.applySetpoint();
+    this.droveSincePeriodic = true;
+  }
+
+  // steps the limited setpoint toward the latest request and sends it to the modules
+  private void applySetpoint() {
+    double timestamp = Timer.getFPGATimestamp();
+    double dt = timestamp - this.lastSetpointTimestamp;
+
+    // after a gap, e.g. coming out of disabled, start from what the robot is actually doing
+    if (!(dt <= DrivetrainConstants.kMaxSetpointGapSeconds)) {
+      ChassisSpeeds measured = this.getChassisSpeeds();
+
+      this.setpointGenerator.reset(
+          measured.vxMetersPerSecond, measured.vyMetersPerSecond, measured.omegaRadiansPerSecond);
+
+      dt = 0.02;
+    }
+
+    this.lastSetpointTimestamp = timestamp;
+
+    this.setpointGenerator.generate(this.desiredVx, this.desiredVy, this.desiredOmega, dt);
+
+    this.swerveDrive.drive(
+        new Translation2d(this.setpointGenerator.getVx(), this.setpointGenerator.getVy()),
+        this.setpointGenerator.getOmega(),
+        false,
+        false);
   }
 
   public boolean seesNote() {
@@ -330,19 +599,63 @@ public class Drivetrain extends SubsystemBase {
     return -0.5 * bestTarget.getYaw();
   }
 
-  private Translation2d getRelativeNoteLocation() {
+  private void trackNotes() {
     PhotonPipelineResult latestResult = this.noteCamera.getLatestResult();
 
-    if (!latestResult.hasTargets()) return new Translation2d();
+    this.fieldNoteTracker.update(
+        latestResult,
+        this.getPoseAt(latestResult.getTimestampSeconds()),
+        Timer.getFPGATimestamp());
+  }
 
-    PhotonTrackedTarget bestTarget = latestResult.getBestTarget();
+  public boolean hasTrackedNote() {
+    return this.getBestNote() != null;
+  }
 
-    // TODO: plus or minus mount pitch?
-    double dz =
-        Units.inchesToMeters(10) / Math.tan((-bestTarget.getPitch() + 24) * Math.PI / 180.0);
-    double dx = dz * Math.tan(bestTarget.getYaw() * Math.PI / 180.0);
+  private TrackedNote getBestNote() {
+    return this.fieldNoteTracker.getBestNote(
+        this.getPose().getTranslation(), Timer.getFPGATimestamp());
+  }
 
-    return new Translation2d(dx, dz);
+  private void followNoteTrajectory() {
+    Pose2d pose = this.getPose();
+    TrackedNote note = this.getBestNote();
+
+    if (note != null) {
+      ChassisSpeeds fieldSpeeds = this.swerveDrive.getFieldVelocity();
+
+      this.noteTrajectoryGenerator.update(
+          pose,
+          new Translation2d(fieldSpeeds.vxMetersPerSecond, fieldSpeeds.vyMetersPerSecond),
+          note.position());
+    }
+
+    TimedTrajectory trajectory = this.noteTrajectoryGenerator.getTrajectory();
+
+    // nothing to follow until the first trajectory lands
+    if (trajectory == null) {
+      this.drive(0.0, 0.0, 0.0, false);
+      return;
+    }
+
+    ChassisSpeeds speeds =
+        this.noteChaseController.calculate(
+            pose, trajectory.sample(Timer.getFPGATimestamp()), trajectory.heading());
+
+    this.driveRobotRelative(speeds);
+
+    SmartDashboard.putNumber(
+        "note trajectory generation (ms)",
+        1000.0 * this.noteTrajectoryGenerator.getLastGenerationSeconds());
+  }
+
+  // done once the latest trajectory has been driven, or straight away with nothing to chase
+  private boolean noteChaseFinished() {
+    TimedTrajectory trajectory = this.noteTrajectoryGenerator.getTrajectory();
+
+    if (trajectory == null) return !this.hasTrackedNote();
+
+    return trajectory.isFinished(Timer.getFPGATimestamp());
   }
 
   private void initTuning() {
@@ -444,11 +757,18 @@ public class Drivetrain extends SubsystemBase {
     SmartDashboard.putNumber("odometry angle (deg)", odometryPose.getRotation().getDegrees());
 
     SmartDashboard.putNumber("distance to speaker", this.getDistanceToSpeaker());
-    SmartDashboard.putNumber("angle to speaker", this.getAngleToSpeaker());
+    SmartDashboard.putNumber("Closest Trap Pose Dist", this.getDistanceToClosestTrap());
 
     SmartDashboard.putBoolean("sees note", this.seesNote());
     SmartDashboard.putNumber("angle to note", this.getNoteAngle());
 
+    TrackedNote bestNote = this.getBestNote();
+
+    SmartDashboard.putNumber(
+        "tracked notes", this.fieldNoteTracker.getNotes(Timer.getFPGATimestamp()).size());
+    SmartDashboard.putNumber(
+        "best note confidence", bestNote == null ? 0.0 : bestNote.confidence());
+
     SmartDashboard.putNumber("chassis speeds x", this.getChassisSpeeds().vxMetersPerSecond);
     SmartDashboard.putNumber("chassis speeds y", this.getChassisSpeeds().vyMetersPerSecond);
 
@@ -458,6 +778,7 @@ public class Drivetrain extends SubsystemBase {
       SmartDashboard.putNumber(
           "module " + i + " velocity",
           this.swerveDrive.getModules()[i].getState().speedMetersPerSecond);
+      SmartDashboard.putBoolean("module " + i + " slipping", this.tractionMonitor.isSlipping(i));
     }
 
     SmartDashboard.putNumber("Max angular drive speed", swerveDrive.getMaximumAngularVelocity());
@@ -469,15 +790,38 @@ public class Drivetrain extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void monitoredPeriodic() {
     // this.odometry.update(this.gyro.getRotation2d(), this.getModulePositions());
+    this.recordPose();
+    this.updateTraction();
     this.fuseVision();
 
+    // one shot commands like stop() only set the request once, so keep stepping toward it
+    if (DriverStation.isDisabled()) {
+      this.desiredVx = 0.0;
+      this.desiredVy = 0.0;
+      this.desiredOmega = 0.0;
+      this.lastSetpointTimestamp = Double.NaN;
+    } else if (!this.droveSincePeriodic
+        && Double.isFinite(this.lastSetpointTimestamp)
+        && !this.setpointGenerator.isSettled()) {
+      this.applySetpoint();
+    }
+
+    this.droveSincePeriodic = false;
+    this.trackNotes();
+
     // this.swerveDrive.field.setRobotPose(this.getPose());
 
     this.doSendables();
   }
 
+  @Override
+  public void simulationPeriodic() {
+    // simulated odometry never slips, so it stands in for the true pose
+    this.visionSim.update(this.getPose());
+  }
+
   public Command zeroYawCommand() {
     return runOnce(this::configureGyro);
   }
@@ -496,13 +840,7 @@ public class Drivetrain extends SubsystemBase {
                   * MathUtil.applyDeadband(MathUtils.squareKeepSign(controller.getRightX()), 0.05)
                   * multiplier;
 
-          // TODO: uncomment for aim assist
-          //
-          // double headingControllerOutput =
-          //     this.headingController.calculate(getYawDeg(), this.getNoteAngle());
-
-          // if (Math.abs(this.getNoteAngle()) > DrivetrainConstants.kHeadingTolerance)
-          //   omega += 0.5 * headingControllerOutput;
+          // aim assist lives in teleopDriveAimed
           //
           // Translation2d strafeVec =
           //     new Translation2d(
@@ -518,33 +856,104 @@ public class Drivetrain extends SubsystemBase {
           //                 * multiplier)
           //         .rotateBy(Rotation2d.fromDegrees(90.0));
 
-          ChassisSpeeds speeds =
-              swerveDrive.swerveController.getTargetSpeeds(
-                  controller.getLeftY(),
-                  controller.getLeftX(),
-                  controller.getRightX() * Math.PI,
-                  swerveDrive.getOdometryHeading().getRadians(),
-                  swerveDrive.getMaximumVelocity());
+          Translation2d strafeVec = this.getTeleopStrafe(controller);
 
-          driveFieldRelative(speeds);
-          Translation2d strafeVec =
-              SwerveMath.scaleTranslation(
-                  new Translation2d(
-                      -MathUtil.applyDeadband(controller.getLeftY(), 0.03)
-                          * swerveDrive.getMaximumVelocity(),
-                      -MathUtil.applyDeadband(controller.getLeftX(), 0.03)
-                          * swerveDrive.getMaximumVelocity()),
-                  0.8);
-
-          if (MyAlliance.isRed()) strafeVec = strafeVec.rotateBy(Rotation2d.fromDegrees(180));
-
-          this.swerveDrive.drive(
-              strafeVec,
+          this.drive(
+              strafeVec.getX(),
+              strafeVec.getY(),
               -Math.pow(controller.getRightX(), 3) * swerveDrive.getMaximumAngularVelocity(),
-              true,
-              false);
+              true);
+        })
+        .finallyDo(() -> this.drive(0.0, 0.0, 0.0, false));
+  }
+
+  // field relative translation from the left stick, flipped so forward is away from the driver
+  private Translation2d getTeleopStrafe(XboxController controller) {
+    Translation2d strafeVec =
+        SwerveMath.scaleTranslation(
+            new Translation2d(
+                -MathUtil.applyDeadband(controller.getLeftY(), 0.03)
+                    * swerveDrive.getMaximumVelocity(),
+                -MathUtil.applyDeadband(controller.getLeftX(), 0.03)
+                    * swerveDrive.getMaximumVelocity()),
+            0.8);
+
+    if (MyAlliance.isRed()) strafeVec = strafeVec.rotateBy(Rotation2d.fromDegrees(180));
+
+    return strafeVec;
+  }
+
+  /**
+   * Teleop driving where the driver only translates and rotation holds a side of the robot on a
+   * field point. The bearing to a fixed point changes at (r x v) / |r|^2 as the robot moves, which
+   * is fed forward as the goal velocity so the heading stays locked while strafing. Falls back to
+   * the right stick whenever the target supplier returns null.
+   */
+  public Command teleopDriveAimed(
+      XboxController controller, Supplier<Translation2d> targetSupplier, double headingOffsetRad) {
+    return run(() -> {
+          Translation2d strafeVec = this.getTeleopStrafe(controller);
+          Translation2d target = targetSupplier.get();
+
+          Pose2d pose = this.getPose();
+          double heading = pose.getRotation().getRadians();
+
+          if (target == null) {
+            this.aimHeadingController.reset(heading, this.getFieldVelocity().omegaRadiansPerSecond);
+
+            this.drive(
+                strafeVec.getX(),
+                strafeVec.getY(),
+                -Math.pow(controller.getRightX(), 3) * swerveDrive.getMaximumAngularVelocity(),
+                true);
+
+            return;
+          }
+
+          ChassisSpeeds fieldVelocity = this.getFieldVelocity();
+
+          double rx = target.getX() - pose.getX();
+          double ry = target.getY() - pose.getY();
+          double rangeSquared = Math.max(rx * rx + ry * ry, 0.01);
+
+          double bearing = Math.atan2(ry, rx);
+          double bearingRate =
+              (ry * fieldVelocity.vxMetersPerSecond - rx * fieldVelocity.vyMetersPerSecond)
+                  / rangeSquared;
+
+          double feedback =
+              this.aimHeadingController.calculate(
+                  heading,
+                  new TrapezoidProfile.State(
+                      MathUtil.angleModulus(bearing + headingOffsetRad), bearingRate));
+
+          double omega = feedback + this.aimHeadingController.getSetpoint().velocity;
+
+          this.drive(strafeVec.getX(), strafeVec.getY(), omega, true);
         })
-        .finallyDo(this::stop);
+        .beforeStarting(
+            () ->
+                this.aimHeadingController.reset(
+                    this.getPose().getRotation().getRadians(),
+                    this.getFieldVelocity().omegaRadiansPerSecond))
+        .finallyDo(() -> this.drive(0.0, 0.0, 0.0, false));
+  }
+
+  /** Teleop drive with the launcher on the back of the robot held on the speaker. */
+  public Command teleopDriveAimedAtSpeaker(XboxController controller) {
+    return this.teleopDriveAimed(controller, this.fieldLayout::getSpeakerPosition, Math.PI);
+  }
+
+  /** Teleop drive with the intake on the left side of the robot held on the best tracked note. */
+  public Command teleopDriveAimedAtNote(XboxController controller) {
+    return this.teleopDriveAimed(
+        controller,
+        () -> {
+          TrackedNote note = this.getBestNote();
+
+          return note == null ? null : note.position();
+        },
+        -Math.PI / 2.0);
   }
 
   public Command driveCommand(
@@ -569,18 +978,17 @@ public class Drivetrain extends SubsystemBase {
     return turnToAngle(() -> angle);
   }
 
+  /**
+   * Follows trajectories into the note that are generated in the background and replaced as the
+   * note estimate improves. Ends once the latest trajectory has been driven to its end, or right
+   * away if there is no tracked note to plan to.
+   */
   public Command driveIntoNote() {
-    // TODO: implement
-    // throw new Exception("Not Implemented");
-    return Commands.none();
-    // return run(() -> {
-    //       double headingControllerOutput =
-    //           -this.headingController.calculate(this.getNoteAngle(), 0.0);
-
-    //       this.driveFromInput(0.0, 1.5, headingControllerOutput, false);
-    //     })
-    //     .until(() -> !this.seesNote())
-    //     .withTimeout(2.5);
+    return run(this::followNoteTrajectory)
+        .beforeStarting(this.noteTrajectoryGenerator::reset)
+        .until(this::noteChaseFinished)
+        .withTimeout(DrivetrainConstants.kNoteChaseTimeoutSeconds)
+        .finallyDo(() -> this.drive(0.0, 0.0, 0.0, false));
   }
 
   private Command turnToAngle(DoubleSupplier angleSupplier) {
@@ -603,7 +1011,7 @@ public class Drivetrain extends SubsystemBase {
   }
 
   public Command turnToSpeaker() {
-    return this.turnToAngle(this::getAngleToSpeaker).withTimeout(1.0);
+    return this.turnToAngle(AimPredictor.getInstance()::getHeadingTargetDeg).withTimeout(1.0);
   }
 
   public Command tuneModulesCommand() {
@@ -636,15 +1044,101 @@ public class Drivetrain extends SubsystemBase {
     //     });
   }
 
+  // flow field targets are in blue coordinates, so plan from the robot's mirrored position
+  private Translation2d getBlueTranslation() {
+    Translation2d translation = this.getPose().getTranslation();
+
+    return MyAlliance.isRed() ? GeometryUtil.flipFieldPosition(translation) : translation;
+  }
+
+  /** Driving distance to a target around the field obstacles, infinite if unreachable. */
+  public double getFlowFieldDistance(Landmark landmark, int index) {
+    return this.getFlowFieldDistance(this.flowFieldTargets[landmark.ordinal()][index]);
+  }
+
+  private double getFlowFieldDistance(FlowFieldTarget target) {
+    if (target.id() == -1)
+      return this.getBlueTranslation().getDistance(target.pose().getTranslation());
+
+    return this.flowField.getDistance(target.id(), this.getBlueTranslation());
+  }
+
+  private Command buildPathToTarget(FlowFieldTarget target) {
+    List<Translation2d> waypoints =
+        target.id() == -1
+            ? List.of()
+            : this.flowField.getPath(target.id(), this.getBlueTranslation());
+
+    if (waypoints.isEmpty())
+      return AutoBuilder.pathfindToPoseFlipped(target.pose(), DrivetrainConstants.kAutoConstraints);
+
+    double straightLineDistance = waypoints.get(0).getDistance(waypoints.get(waypoints.size() - 1));
+
+    if (straightLineDistance < DrivetrainConstants.kMinFlowFieldPathMeters) return Commands.none();
+
+    // each waypoint faces along the direction of travel, the goal state sets the final heading
+    List<Pose2d> poses = new ArrayList<>(waypoints.size());
+
+    for (int i = 0; i < waypoints.size(); i++) {
+      Translation2d direction =
+          i < waypoints.size() - 1
+              ? waypoints.get(i + 1).minus(waypoints.get(i))
+              : waypoints.get(i).minus(waypoints.get(i - 1));
+
+      poses.add(new Pose2d(waypoints.get(i), direction.getAngle()));
+    }
+
+    // AutoBuilder mirrors this for red just like a path loaded from a file
+    PathPlannerPath path =
+        new PathPlannerPath(
+            PathPlannerPath.bezierFromPoses(poses),
+            DrivetrainConstants.kAutoConstraints,
+            new GoalEndState(0.0, target.pose().getRotation()));
+
+    return AutoBuilder.followPath(path);
+  }
+
+  private Command driveToTarget(FlowFieldTarget target) {
+    return Commands.defer(() -> this.buildPathToTarget(target), Set.of(this));
+  }
+
+  /**
+   * Drives to a field layout landmark along the precomputed flow field, planned when scheduled.
+   * Only the speaker subwoofer, the amp, the source and the traps have targets.
+   */
+  public Command driveToTarget(Landmark landmark, int index) {
+    return this.driveToTarget(this.flowFieldTargets[landmark.ordinal()][index]);
+  }
+
+  // by driving distance rather than straight line, the stage is in the way of some traps
+  private FlowFieldTarget getClosestTrap() {
+    FlowFieldTarget[] traps = this.flowFieldTargets[Landmark.kTrap.ordinal()];
+    FlowFieldTarget closest = traps[0];
+
+    for (int i = 1; i < traps.length; i++)
+      if (this.getFlowFieldDistance(traps[i]) < this.getFlowFieldDistance(closest))
+        closest = traps[i];
+
+    return closest;
+  }
+
   public Command pathfindToTrap() {
-    return AutoBuilder.pathfindToPose(
-        this.getClosestTrapPosition().pose, DrivetrainConstants.kAutoConstraints);
+    return Commands.defer(() -> this.buildPathToTarget(this.getClosestTrap()), Set.of(this));
+  }
+
+  /** Drives up to the subwoofer with the bumpers against it, ready for a fixed speaker shot. */
+  public Command driveToSubwoofer() {
+    return this.driveToTarget(Landmark.kSpeaker, 0);
+  }
+
+  /** Drives up to the source with the bumpers against it, ready to intake. */
+  public Command driveToSource() {
+    return this.driveToTarget(Landmark.kSource, 0);
   }
 
-  // TODO: distance filter, same as trap
   public Command alignToAmp() {
-    return AutoBuilder.pathfindThenFollowPath(
-        PathPlannerPath.fromPathFile("AmpAlign"), DrivetrainConstants.kAutoConstraints);
+    return this.driveToTarget(Landmark.kAmp, 0)
+        .andThen(AutoBuilder.followPath(Assets.getPath("AmpAlign")));
   }
 
   public Command followPath(PathPlannerPath path) {
@@ -0,0 +1,336 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.robolancers321.Constants.DrivetrainConstants;
+
+/**
+ * Field relative estimates of every note the note camera has seen recently. Each detection is
+ * projected onto the floor from the robot's pose at the frame, matched to an existing track by
+ * Mahalanobis distance, and folded into that track's position Kalman filter. Tracks outlive the
+ * frames they came from, so a note that drops out of view can still be driven to.
+ */
+public class FieldNoteTracker {
+  /** A snapshot of one tracked note, confidence is in [0, 1]. */
+  public record TrackedNote(
+      Translation2d position, double stdDevMeters, double confidence, double lastSeenTimestamp) {}
+
+  // notes sit still, so the filter state is just a position with a 2x2 covariance
+  private static class Track {
+    boolean active = false;
+
+    double x;
+    double y;
+    double pxx;
+    double pxy;
+    double pyy;
+
+    int hits;
+    int misses;
+    double lastSeenTimestamp;
+    double lastPredictTimestamp;
+
+    double confidence(double timestamp) {
+      double age = timestamp - this.lastSeenTimestamp;
+
+      return (1.0 - Math.exp(-this.hits / DrivetrainConstants.kNoteConfidenceHits))
+          * Math.max(1.0 - age / DrivetrainConstants.kNoteTrackTimeoutSeconds, 0.0);
+    }
+  }
+
+  private final Track[] tracks = new Track[DrivetrainConstants.kMaxTrackedNotes];
+
+  // scratch for one frame's measurements, {x, y, rxx, rxy, ryy}
+  private final double[][] measurements = new double[DrivetrainConstants.kMaxTrackedNotes][5];
+  private final boolean[] matched = new boolean[DrivetrainConstants.kMaxTrackedNotes];
+
+  private double lastFrameTimestamp = Double.NEGATIVE_INFINITY;
+
+  public FieldNoteTracker() {
+    for (int i = 0; i < this.tracks.length; i++) this.tracks[i] = new Track();
+  }
+
+  /**
+   * Folds in a camera frame if it has not been seen yet. The pose must be the robot's pose when the
+   * frame was captured, not when it arrived.
+   */
+  public void update(PhotonPipelineResult result, Pose2d robotPose, double timestamp) {
+    double frameTimestamp = result.getTimestampSeconds();
+
+    if (frameTimestamp > this.lastFrameTimestamp) {
+      this.lastFrameTimestamp = frameTimestamp;
+
+      int measurementCount = this.project(result, robotPose);
+
+      this.predict(frameTimestamp);
+      this.associate(measurementCount, frameTimestamp);
+      this.countMisses(robotPose);
+    }
+
+    this.prune(timestamp);
+  }
+
+  // fills the scratch buffer with floor positions and covariances, returns how many it kept
+  private int project(PhotonPipelineResult result, Pose2d robotPose) {
+    int count = 0;
+
+    double heading = robotPose.getRotation().getRadians();
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+
+    for (PhotonTrackedTarget target : result.getTargets()) {
+      if (count == this.measurements.length) break;
+
+      // angle below the horizon to the note
+      double depression =
+          Math.toRadians(-(target.getPitch() + DrivetrainConstants.kNoteCameraMountPitch));
+
+      if (depression <= 0.0) continue;
+
+      // the note camera looks out the robot's left side, so range is along robot y
+      double forward = DrivetrainConstants.kNoteCameraMountHeight / Math.tan(depression);
+      double lateral = forward * Math.tan(Math.toRadians(target.getYaw()));
+
+      double range = Math.hypot(forward, lateral);
+
+      if (range > DrivetrainConstants.kNoteMaxRangeMeters) continue;
+
+      double[] measurement = this.measurements[count++];
+
+      measurement[0] = robotPose.getX() + lateral * cos - forward * sin;
+      measurement[1] = robotPose.getY() + lateral * sin + forward * cos;
+
+      // range is much less certain than bearing, so stretch the covariance along the line of sight
+      double rangeStdDev = DrivetrainConstants.kNoteRangeStdDevFraction * range;
+      double bearingStdDev = Math.toRadians(DrivetrainConstants.kNoteBearingStdDevDeg) * range;
+
+      double c = (measurement[0] - robotPose.getX()) / range;
+      double s = (measurement[1] - robotPose.getY()) / range;
+      double rangeVariance = rangeStdDev * rangeStdDev;
+      double bearingVariance = bearingStdDev * bearingStdDev;
+
+      measurement[2] = rangeVariance * c * c + bearingVariance * s * s;
+      measurement[3] = (rangeVariance - bearingVariance) * c * s;
+      measurement[4] = rangeVariance * s * s + bearingVariance * c * c;
+    }
+
+    return count;
+  }
+
+  private void predict(double timestamp) {
+    for (Track track : this.tracks) {
+      if (!track.active) continue;
+
+      double dt = timestamp - track.lastPredictTimestamp;
+
+      track.pxx += DrivetrainConstants.kNoteProcessNoise * dt;
+      track.pyy += DrivetrainConstants.kNoteProcessNoise * dt;
+      track.lastPredictTimestamp = timestamp;
+    }
+  }
+
+  private void associate(int measurementCount, double timestamp) {
+    for (int i = 0; i < this.tracks.length; i++) this.matched[i] = false;
+
+    for (int m = 0; m < measurementCount; m++) {
+      double[] z = this.measurements[m];
+
+      int best = -1;
+      double bestDistance = DrivetrainConstants.kNoteGateChiSquared;
+
+      for (int i = 0; i < this.tracks.length; i++) {
+        Track track = this.tracks[i];
+
+        if (!track.active || this.matched[i]) continue;
+
+        double distance = mahalanobis(track, z);
+
+        if (distance < bestDistance) {
+          best = i;
+          bestDistance = distance;
+        }
+      }
+
+      if (best != -1) {
+        correct(this.tracks[best], z);
+
+        this.tracks[best].hits++;
+        this.tracks[best].misses = 0;
+        this.tracks[best].lastSeenTimestamp = timestamp;
+        this.matched[best] = true;
+      } else {
+        int slot = this.freeSlot(timestamp);
+
+        this.start(this.tracks[slot], z, timestamp);
+        this.matched[slot] = true;
+      }
+    }
+  }
+
+  private static double mahalanobis(Track track, double[] z) {
+    double sxx = track.pxx + z[2];
+    double sxy = track.pxy + z[3];
+    double syy = track.pyy + z[4];
+    double det = sxx * syy - sxy * sxy;
+
+    double dx = z[0] - track.x;
+    double dy = z[1] - track.y;
+
+    return (dx * dx * syy - 2.0 * dx * dy * sxy + dy * dy * sxx) / det;
+  }
+
+  private static void correct(Track track, double[] z) {
+    double sxx = track.pxx + z[2];
+    double sxy = track.pxy + z[3];
+    double syy = track.pyy + z[4];
+    double det = sxx * syy - sxy * sxy;
+
+    // K = P S^-1
+    double kxx = (track.pxx * syy - track.pxy * sxy) / det;
+    double kxy = (track.pxy * sxx - track.pxx * sxy) / det;
+    double kyx = (track.pxy * syy - track.pyy * sxy) / det;
+    double kyy = (track.pyy * sxx - track.pxy * sxy) / det;
+
+    double dx = z[0] - track.x;
+    double dy = z[1] - track.y;
+
+    track.x += kxx * dx + kxy * dy;
+    track.y += kyx * dx + kyy * dy;
+
+    // P = (I - K) P
+    double pxx = (1.0 - kxx) * track.pxx - kxy * track.pxy;
+    double pxy = (1.0 - kxx) * track.pxy - kxy * track.pyy;
+    double pyy = -kyx * track.pxy + (1.0 - kyy) * track.pyy;
+
+    track.pxx = pxx;
+    track.pxy = pxy;
+    track.pyy = pyy;
+  }
+
+  private void start(Track track, double[] z, double timestamp) {
+    track.active = true;
+
+    track.x = z[0];
+    track.y = z[1];
+    track.pxx = z[2];
+    track.pxy = z[3];
+    track.pyy = z[4];
+
+    track.hits = 1;
+    track.misses = 0;
+    track.lastSeenTimestamp = timestamp;
+    track.lastPredictTimestamp = timestamp;
+  }
+
+  // an inactive slot, or the least confident track if every slot is taken
+  private int freeSlot(double timestamp) {
+    int worst = 0;
+    double worstConfidence = Double.POSITIVE_INFINITY;
+
+    for (int i = 0; i < this.tracks.length; i++) {
+      if (!this.tracks[i].active) return i;
+
+      double confidence = this.tracks[i].confidence(timestamp);
+
+      if (!this.matched[i] && confidence < worstConfidence) {
+        worst = i;
+        worstConfidence = confidence;
+      }
+    }
+
+    return worst;
+  }
+
+  // a track the camera should have seen but did not is probably gone, most likely into the intake
+  private void countMisses(Pose2d robotPose) {
+    double heading = robotPose.getRotation().getRadians();
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+
+    for (int i = 0; i < this.tracks.length; i++) {
+      Track track = this.tracks[i];
+
+      if (!track.active || this.matched[i]) continue;
+
+      double dx = track.x - robotPose.getX();
+      double dy = track.y - robotPose.getY();
+
+      double lateral = dx * cos + dy * sin;
+      double forward = -dx * sin + dy * cos;
+
+      boolean inView =
+          forward > DrivetrainConstants.kNoteMinVisibleRangeMeters
+              && forward < DrivetrainConstants.kNoteMaxRangeMeters
+              && Math.abs(Math.atan2(lateral, forward))
+                  < Math.toRadians(DrivetrainConstants.kNoteCameraHalfFovDeg);
+
+      if (inView) track.misses++;
+    }
+  }
+
+  private void prune(double timestamp) {
+    for (Track track : this.tracks) {
+      if (!track.active) continue;
+
+      if (track.misses > DrivetrainConstants.kNoteMaxMisses
+          || timestamp - track.lastSeenTimestamp > DrivetrainConstants.kNoteTrackTimeoutSeconds)
+        track.active = false;
+    }
+  }
+
+  public void clear() {
+    for (Track track : this.tracks) track.active = false;
+  }
+
+  /** Live notes, most confident first. */
+  public List<TrackedNote> getNotes(double timestamp) {
+    List<TrackedNote> notes = new ArrayList<>();
+
+    for (Track track : this.tracks) {
+      if (!track.active) continue;
+
+      notes.add(
+          new TrackedNote(
+              new Translation2d(track.x, track.y),
+              Math.sqrt(Math.max(track.pxx, track.pyy)),
+              track.confidence(timestamp),
+              track.lastSeenTimestamp));
+    }
+
+    notes.sort(Comparator.comparingDouble(TrackedNote::confidence).reversed());
+
+    return notes;
+  }
+
+  /** The closest note that is confident enough to drive to, or null if there is none. */
+  public TrackedNote getBestNote(Translation2d from, double timestamp) {
+    Track best = null;
+    double bestDistance = Double.POSITIVE_INFINITY;
+
+    for (Track track : this.tracks) {
+      if (!track.active) continue;
+      if (track.confidence(timestamp) < DrivetrainConstants.kNoteMinConfidence) continue;
+
+      double distance = Math.hypot(track.x - from.getX(), track.y - from.getY());
+
+      if (distance < bestDistance) {
+        best = track;
+        bestDistance = distance;
+      }
+    }
+
+    if (best == null) return null;
+
+    return new TrackedNote(
+        new Translation2d(best.x, best.y),
+        Math.sqrt(Math.max(best.pxx, best.pyy)),
+        best.confidence(timestamp),
+        best.lastSeenTimestamp);
+  }
+}
@@ -0,0 +1,255 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Translation2d;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Shortest path trees over the PathPlanner navgrid, one per fixed target, built once at boot. Each
+ * free cell stores its distance to the target and the neighbor to step to next, so a path from
+ * anywhere on the field is a walk down the tree instead of a search.
+ */
+public class FlowField {
+  private static final int[][] kNeighbors = {
+    {1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+  };
+
+  // how far to look for a free cell when a point lands inside an obstacle
+  private static final int kMaxSnapRadius = 3;
+
+  private final boolean[] blocked;
+  private final int rows;
+  private final int cols;
+  private final double nodeSizeMeters;
+
+  private final List<Translation2d> targets = new ArrayList<>();
+  private final List<double[]> distances = new ArrayList<>();
+  private final List<int[]> nextCells = new ArrayList<>();
+
+  public FlowField(boolean[][] grid, double nodeSizeMeters) {
+    this.rows = grid.length;
+    this.cols = grid[0].length;
+    this.nodeSizeMeters = nodeSizeMeters;
+
+    this.blocked = new boolean[this.rows * this.cols];
+
+    for (int row = 0; row < this.rows; row++)
+      for (int col = 0; col < this.cols; col++)
+        this.blocked[row * this.cols + col] = grid[row][col];
+  }
+
+  public static FlowField fromNavGrid(File navGrid) throws IOException {
+    JsonNode root = new ObjectMapper().readTree(navGrid);
+    JsonNode gridNode = root.get("grid");
+
+    boolean[][] grid = new boolean[gridNode.size()][];
+
+    for (int row = 0; row < grid.length; row++) {
+      JsonNode rowNode = gridNode.get(row);
+      grid[row] = new boolean[rowNode.size()];
+
+      for (int col = 0; col < grid[row].length; col++)
+        grid[row][col] = rowNode.get(col).asBoolean();
+    }
+
+    return new FlowField(grid, root.get("nodeSizeMeters").asDouble());
+  }
+
+  private int cellOf(double x, double y) {
+    int col = (int) Math.floor(x / this.nodeSizeMeters);
+    int row = (int) Math.floor(y / this.nodeSizeMeters);
+
+    if (row < 0 || row >= this.rows || col < 0 || col >= this.cols) return -1;
+
+    return row * this.cols + col;
+  }
+
+  private boolean isFree(int row, int col) {
+    return row >= 0
+        && row < this.rows
+        && col >= 0
+        && col < this.cols
+        && !this.blocked[row * this.cols + col];
+  }
+
+  private Translation2d centerOf(int cell) {
+    return new Translation2d(
+        (cell % this.cols + 0.5) * this.nodeSizeMeters,
+        (cell / this.cols + 0.5) * this.nodeSizeMeters);
+  }
+
+  // closest free cell to a point, searching outward in rings, or -1 if there is none nearby
+  private int nearestFreeCell(Translation2d point) {
+    int col = (int) Math.floor(point.getX() / this.nodeSizeMeters);
+    int row = (int) Math.floor(point.getY() / this.nodeSizeMeters);
+
+    int best = -1;
+    double bestDistance = Double.POSITIVE_INFINITY;
+
+    for (int radius = 0; radius <= kMaxSnapRadius && best == -1; radius++) {
+      for (int dRow = -radius; dRow <= radius; dRow++) {
+        for (int dCol = -radius; dCol <= radius; dCol++) {
+          if (Math.max(Math.abs(dRow), Math.abs(dCol)) != radius) continue;
+          if (!this.isFree(row + dRow, col + dCol)) continue;
+
+          int cell = (row + dRow) * this.cols + col + dCol;
+          double distance = this.centerOf(cell).getDistance(point);
+
+          if (distance < bestDistance) {
+            best = cell;
+            bestDistance = distance;
+          }
+        }
+      }
+    }
+
+    return best;
+  }
+
+  /** Builds the shortest path tree to a target and returns the id used to query it. */
+  public int addTarget(Translation2d target) {
+    int cellCount = this.rows * this.cols;
+
+    double[] distance = new double[cellCount];
+    int[] next = new int[cellCount];
+
+    Arrays.fill(distance, Double.POSITIVE_INFINITY);
+    Arrays.fill(next, -1);
+
+    int goal = this.nearestFreeCell(target);
+
+    if (goal != -1) {
+      distance[goal] = 0.0;
+      next[goal] = goal;
+
+      PriorityQueue<double[]> queue = new PriorityQueue<>(Comparator.comparingDouble(e -> e[0]));
+      queue.add(new double[] {0.0, goal});
+
+      // dijkstra outward from the goal, so next always points one step closer to it
+      while (!queue.isEmpty()) {
+        double[] entry = queue.poll();
+        int cell = (int) entry[1];
+
+        if (entry[0] > distance[cell]) continue;
+
+        int row = cell / this.cols;
+        int col = cell % this.cols;
+
+        for (int[] offset : kNeighbors) {
+          int neighborRow = row + offset[0];
+          int neighborCol = col + offset[1];
+
+          if (!this.isFree(neighborRow, neighborCol)) continue;
+
+          boolean diagonal = offset[0] != 0 && offset[1] != 0;
+
+          // no cutting the corner of an obstacle
+          if (diagonal && !(this.isFree(row + offset[0], col) && this.isFree(row, col + offset[1])))
+            continue;
+
+          int neighbor = neighborRow * this.cols + neighborCol;
+          double step = diagonal ? this.nodeSizeMeters * Math.sqrt(2.0) : this.nodeSizeMeters;
+
+          if (distance[cell] + step < distance[neighbor]) {
+            distance[neighbor] = distance[cell] + step;
+            next[neighbor] = cell;
+            queue.add(new double[] {distance[neighbor], neighbor});
+          }
+        }
+      }
+    }
+
+    this.targets.add(target);
+    this.distances.add(distance);
+    this.nextCells.add(next);
+
+    return this.targets.size() - 1;
+  }
+
+  /** Path length through the grid to a target, or infinity if it cannot be reached. */
+  public double getDistance(int targetId, Translation2d from) {
+    int start = this.nearestFreeCell(from);
+
+    if (start == -1) return Double.POSITIVE_INFINITY;
+
+    return this.distances.get(targetId)[start];
+  }
+
+  private boolean hasLineOfSight(Translation2d from, Translation2d to) {
+    double length = from.getDistance(to);
+    int samples = (int) Math.ceil(length / (0.25 * this.nodeSizeMeters));
+
+    for (int i = 0; i <= samples; i++) {
+      double t = samples == 0 ? 0.0 : (double) i / samples;
+      int cell =
+          this.cellOf(
+              from.getX() + (to.getX() - from.getX()) * t,
+              from.getY() + (to.getY() - from.getY()) * t);
+
+      if (cell == -1 || this.blocked[cell]) return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Waypoints from a point to a target, starting at the point and ending exactly on the target.
+   * Cells along the tree are pruned down to the corners that actually need turning. Returns an
+   * empty list if the target cannot be reached.
+   */
+  public List<Translation2d> getPath(int targetId, Translation2d from) {
+    int[] next = this.nextCells.get(targetId);
+    int start = this.nearestFreeCell(from);
+
+    if (start == -1 || next[start] == -1) return List.of();
+
+    List<Translation2d> cells = new ArrayList<>();
+
+    for (int cell = start; ; cell = next[cell]) {
+      cells.add(this.centerOf(cell));
+
+      if (next[cell] == cell) break;
+    }
+
+    List<Translation2d> path = new ArrayList<>();
+    path.add(from);
+
+    // keep jumping to the farthest cell still in view
+    int anchor = 0;
+
+    while (anchor < cells.size() - 1) {
+      int farthest = anchor + 1;
+
+      for (int i = cells.size() - 1; i > anchor + 1; i--) {
+        if (this.hasLineOfSight(cells.get(anchor), cells.get(i))) {
+          farthest = i;
+          break;
+        }
+      }
+
+      path.add(cells.get(farthest));
+      anchor = farthest;
+    }
+
+    Translation2d target = this.targets.get(targetId);
+
+    // the goal cell center is only a stand-in for the target, skip it when the target is in view
+    // or so close that keeping it would put a kink right at the end of the path
+    if (path.size() > 1
+        && (this.hasLineOfSight(path.get(path.size() - 2), target)
+            || path.get(path.size() - 1).getDistance(target) < this.nodeSizeMeters))
+      path.remove(path.size() - 1);
+
+    path.add(target);
+
+    return path;
+  }
+}
@@ -0,0 +1,133 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.robolancers321.Constants.DrivetrainConstants;
+
+/**
+ * Generates trajectories into a note on a background thread so the main loop never waits on spline
+ * generation. Each trajectory starts from the robot's pose and velocity at the moment it was
+ * requested and is swapped in atomically when ready, then regenerated whenever the note estimate
+ * moves far enough from the one it was planned against.
+ */
+public class NoteTrajectoryGenerator {
+  /** A trajectory plus the heading to hold while following it, timed from when it was requested. */
+  public record TimedTrajectory(
+      Trajectory trajectory, Rotation2d heading, Translation2d note, double startTimestamp) {
+    public Trajectory.State sample(double timestamp) {
+      return this.trajectory.sample(timestamp - this.startTimestamp);
+    }
+
+    public boolean isFinished(double timestamp) {
+      return timestamp - this.startTimestamp > this.trajectory.getTotalTimeSeconds();
+    }
+  }
+
+  private record Request(
+      Pose2d pose, Translation2d fieldVelocity, Translation2d note, double timestamp) {}
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "Note Trajectory Generator");
+            thread.setDaemon(true);
+
+            return thread;
+          });
+
+  private final AtomicReference<TimedTrajectory> trajectory = new AtomicReference<>();
+  private final AtomicBoolean generating = new AtomicBoolean(false);
+
+  private volatile double lastGenerationSeconds = 0.0;
+
+  // only touched from the main loop
+  private Translation2d lastRequestedNote = null;
+
+  public void reset() {
+    this.trajectory.set(null);
+    this.lastRequestedNote = null;
+  }
+
+  /**
+   * Queues a new trajectory if the note estimate has moved since the last one and no generation
+   * is already running. Call every loop while chasing, it returns immediately.
+   */
+  public void update(Pose2d pose, Translation2d fieldVelocity, Translation2d note) {
+    if (this.lastRequestedNote != null
+        && this.lastRequestedNote.getDistance(note)
+            < DrivetrainConstants.kNoteReplanThresholdMeters) return;
+
+    if (!this.generating.compareAndSet(false, true)) return;
+
+    this.lastRequestedNote = note;
+
+    Request request = new Request(pose, fieldVelocity, note, Timer.getFPGATimestamp());
+
+    this.executor.execute(
+        () -> {
+          try {
+            this.trajectory.set(this.generate(request));
+          } finally {
+            this.generating.set(false);
+          }
+        });
+  }
+
+  /** Latest finished trajectory, or null if none has been generated since the last reset. */
+  public TimedTrajectory getTrajectory() {
+    return this.trajectory.get();
+  }
+
+  public double getLastGenerationSeconds() {
+    return this.lastGenerationSeconds;
+  }
+
+  private TimedTrajectory generate(Request request) {
+    double generationStart = Timer.getFPGATimestamp();
+
+    Translation2d start = request.pose().getTranslation();
+    Rotation2d approach = request.note().minus(start).getAngle();
+
+    // drive a little past the note so it is fully in the intake before stopping
+    Translation2d end =
+        request
+            .note()
+            .plus(new Translation2d(DrivetrainConstants.kNoteDriveThroughMeters, approach));
+
+    // keep the robot's current direction of travel so the path starts without a kink
+    double startSpeed = request.fieldVelocity().getNorm();
+    Rotation2d startTangent =
+        startSpeed > DrivetrainConstants.kNoteMinTangentSpeed
+            ? request.fieldVelocity().getAngle()
+            : approach;
+
+    TrajectoryConfig config =
+        new TrajectoryConfig(
+                DrivetrainConstants.kNoteChaseMaxVelocity,
+                DrivetrainConstants.kNoteChaseMaxAcceleration)
+            .setStartVelocity(Math.min(startSpeed, DrivetrainConstants.kNoteChaseMaxVelocity))
+            .setEndVelocity(0.0);
+
+    Trajectory generated =
+        TrajectoryGenerator.generateTrajectory(
+            new Pose2d(start, startTangent), List.of(), new Pose2d(end, approach), config);
+
+    // the intake is on the robot's left side, so face it down the approach
+    Rotation2d heading = approach.minus(Rotation2d.fromDegrees(90.0));
+
+    this.lastGenerationSeconds = Timer.getFPGATimestamp() - generationStart;
+
+    return new TimedTrajectory(generated, heading, request.note(), request.timestamp());
+  }
+}
@@ -0,0 +1,128 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/**
+ * Fixed size ring buffer of timestamped field poses and robot relative speeds, so anything working
+ * off a delayed sensor frame can look up where the robot was when the frame was captured. Samples
+ * are interpolated between the two entries around the requested time and clamped at either end.
+ */
+public class PoseHistory {
+  /** Interpolated state at a timestamp, reused between lookups instead of allocating. */
+  public static class Sample {
+    public double x;
+    public double y;
+    public double headingRad;
+    public double vx;
+    public double vy;
+    public double omega;
+
+    public Pose2d toPose2d() {
+      return new Pose2d(this.x, this.y, new Rotation2d(this.headingRad));
+    }
+  }
+
+  private final int capacity;
+
+  private final double[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] headings;
+  private final double[] vxs;
+  private final double[] vys;
+  private final double[] omegas;
+
+  // oldest entry at head
+  private int head = 0;
+  private int count = 0;
+
+  public PoseHistory(int capacity) {
+    this.capacity = capacity;
+
+    this.timestamps = new double[capacity];
+    this.xs = new double[capacity];
+    this.ys = new double[capacity];
+    this.headings = new double[capacity];
+    this.vxs = new double[capacity];
+    this.vys = new double[capacity];
+    this.omegas = new double[capacity];
+  }
+
+  public void clear() {
+    this.head = 0;
+    this.count = 0;
+  }
+
+  public int size() {
+    return this.count;
+  }
+
+  private int index(int i) {
+    return (this.head + i) % this.capacity;
+  }
+
+  /** Adds a sample, ignoring it if it is not newer than the last one. */
+  public void add(double timestamp, Pose2d pose, ChassisSpeeds speeds) {
+    if (this.count > 0 && timestamp <= this.timestamps[this.index(this.count - 1)]) return;
+
+    int tail;
+
+    if (this.count == this.capacity) {
+      tail = this.head;
+      this.head = this.index(1);
+    } else {
+      tail = this.index(this.count);
+      this.count++;
+    }
+
+    this.timestamps[tail] = timestamp;
+    this.xs[tail] = pose.getX();
+    this.ys[tail] = pose.getY();
+    this.headings[tail] = pose.getRotation().getRadians();
+    this.vxs[tail] = speeds.vxMetersPerSecond;
+    this.vys[tail] = speeds.vyMetersPerSecond;
+    this.omegas[tail] = speeds.omegaRadiansPerSecond;
+  }
+
+  /**
+   * Fills out with the state at a timestamp, interpolating between neighbors. Returns false and
+   * leaves out untouched if the history is empty.
+   */
+  public boolean sample(double timestamp, Sample out) {
+    if (this.count == 0) return false;
+
+    // first entry at or after the timestamp
+    int low = 0;
+    int high = this.count;
+
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+
+      if (this.timestamps[this.index(mid)] < timestamp) low = mid + 1;
+      else high = mid;
+    }
+
+    int after = this.index(Math.min(low, this.count - 1));
+    int before = this.index(Math.max(low - 1, 0));
+
+    double span = this.timestamps[after] - this.timestamps[before];
+    double t =
+        span <= 0.0 ? 0.0 : MathUtil.clamp((timestamp - this.timestamps[before]) / span, 0.0, 1.0);
+
+    out.x = MathUtil.interpolate(this.xs[before], this.xs[after], t);
+    out.y = MathUtil.interpolate(this.ys[before], this.ys[after], t);
+    out.headingRad =
+        MathUtil.angleModulus(
+            this.headings[before]
+                + t * MathUtil.angleModulus(this.headings[after] - this.headings[before]));
+    out.vx = MathUtil.interpolate(this.vxs[before], this.vxs[after], t);
+    out.vy = MathUtil.interpolate(this.vys[before], this.vys[after], t);
+    out.omega = MathUtil.interpolate(this.omegas[before], this.omegas[after], t);
+
+    return true;
+  }
+}
@@ -0,0 +1,184 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Moves the commanded robot relative chassis speeds toward a desired value only as fast as every
+ * module can follow. Each cycle the step from the previous setpoint to the desired speeds is cut
+ * short so no module's velocity vector changes faster than the acceleration limit and no moving
+ * module has to steer farther than its steering rate allows. Modules may reverse instead of
+ * turning around, so a direction change only costs a deceleration. Everything lives in primitive
+ * arrays and nothing is allocated per cycle.
+ */
+public class SwerveSetpointGenerator {
+  // below this a module is considered stopped and free to steer anywhere
+  private static final double kStoppedSpeedMetersPerSecond = 0.05;
+
+  private static final int kSteerSearchIterations = 10;
+
+  private static final double kSettledStep = 1e-6;
+
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  private final double maxModuleSpeed;
+  private final double maxModuleAcceleration;
+  private final double maxSteerRate;
+
+  // current setpoint, robot relative
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+
+  // per module velocity vectors at the current setpoint
+  private final double[] moduleVx;
+  private final double[] moduleVy;
+
+  private boolean settled = true;
+
+  public SwerveSetpointGenerator(
+      double[] moduleX,
+      double[] moduleY,
+      double maxModuleSpeed,
+      double maxModuleAcceleration,
+      double maxSteerRate) {
+    this.moduleCount = moduleX.length;
+    this.moduleX = moduleX.clone();
+    this.moduleY = moduleY.clone();
+
+    this.maxModuleSpeed = maxModuleSpeed;
+    this.maxModuleAcceleration = maxModuleAcceleration;
+    this.maxSteerRate = maxSteerRate;
+
+    this.moduleVx = new double[this.moduleCount];
+    this.moduleVy = new double[this.moduleCount];
+  }
+
+  /** Jumps straight to a setpoint, e.g. the measured speeds after being disabled. */
+  public void reset(double vx, double vy, double omega) {
+    this.vx = vx;
+    this.vy = vy;
+    this.omega = omega;
+
+    for (int i = 0; i < this.moduleCount; i++) {
+      this.moduleVx[i] = vx - omega * this.moduleY[i];
+      this.moduleVy[i] = vy + omega * this.moduleX[i];
+    }
+  }
+
+  public double getVx() {
+    return this.vx;
+  }
+
+  public double getVy() {
+    return this.vy;
+  }
+
+  public double getOmega() {
+    return this.omega;
+  }
+
+  /** True once the setpoint has reached the last desired speeds it was given. */
+  public boolean isSettled() {
+    return this.settled;
+  }
+
+  public double getModuleSpeed(int module) {
+    return Math.hypot(this.moduleVx[module], this.moduleVy[module]);
+  }
+
+  public double getModuleAngleRad(int module) {
+    return Math.atan2(this.moduleVy[module], this.moduleVx[module]);
+  }
+
+  /** Steps the setpoint toward the desired robot relative speeds over dt seconds. */
+  public void generate(double desiredVx, double desiredVy, double desiredOmega, double dt) {
+    // scale the whole request down if any module would have to go faster than it can
+    double fastestModule = 0.0;
+
+    for (int i = 0; i < this.moduleCount; i++) {
+      fastestModule =
+          Math.max(
+              fastestModule,
+              Math.hypot(
+                  desiredVx - desiredOmega * this.moduleY[i],
+                  desiredVy + desiredOmega * this.moduleX[i]));
+    }
+
+    if (fastestModule > this.maxModuleSpeed) {
+      double scale = this.maxModuleSpeed / fastestModule;
+
+      desiredVx *= scale;
+      desiredVy *= scale;
+      desiredOmega *= scale;
+    }
+
+    double dvx = desiredVx - this.vx;
+    double dvy = desiredVy - this.vy;
+    double dOmega = desiredOmega - this.omega;
+
+    // fraction of the way to the desired speeds we can go this cycle
+    double s = 1.0;
+
+    for (int i = 0; i < this.moduleCount; i++) {
+      // module velocity is linear in chassis speeds, so the step along the way is too
+      double stepX = dvx - dOmega * this.moduleY[i];
+      double stepY = dvy + dOmega * this.moduleX[i];
+      double stepNorm = Math.hypot(stepX, stepY);
+
+      if (stepNorm > 1e-9) s = Math.min(s, this.maxModuleAcceleration * dt / stepNorm);
+
+      if (!this.canSteer(i, stepX, stepY, s, dt))
+        s = this.maxSteerableFraction(i, stepX, stepY, s, dt);
+    }
+
+    double remaining =
+        (1.0 - s) * Math.max(Math.abs(dvx), Math.max(Math.abs(dvy), Math.abs(dOmega)));
+
+    this.settled = remaining < kSettledStep;
+
+    this.vx += s * dvx;
+    this.vy += s * dvy;
+    this.omega += s * dOmega;
+
+    for (int i = 0; i < this.moduleCount; i++) {
+      this.moduleVx[i] = this.vx - this.omega * this.moduleY[i];
+      this.moduleVy[i] = this.vy + this.omega * this.moduleX[i];
+    }
+  }
+
+  private boolean canSteer(int module, double stepX, double stepY, double s, double dt) {
+    double fromX = this.moduleVx[module];
+    double fromY = this.moduleVy[module];
+    double toX = fromX + s * stepX;
+    double toY = fromY + s * stepY;
+
+    if (Math.hypot(fromX, fromY) < kStoppedSpeedMetersPerSecond
+        || Math.hypot(toX, toY) < kStoppedSpeedMetersPerSecond) return true;
+
+    double turn = Math.abs(MathUtil.angleModulus(Math.atan2(toY, toX) - Math.atan2(fromY, fromX)));
+
+    // driving the module backwards turns it the other way around
+    turn = Math.min(turn, Math.PI - turn);
+
+    return turn <= this.maxSteerRate * dt;
+  }
+
+  // largest fraction in [0, upper] that keeps the module within its steering rate
+  private double maxSteerableFraction(
+      int module, double stepX, double stepY, double upper, double dt) {
+    double low = 0.0;
+    double high = upper;
+
+    for (int i = 0; i < kSteerSearchIterations; i++) {
+      double mid = 0.5 * (low + high);
+
+      if (this.canSteer(module, stepX, stepY, mid, dt)) low = mid;
+      else high = mid;
+    }
+
+    return low;
+  }
+}
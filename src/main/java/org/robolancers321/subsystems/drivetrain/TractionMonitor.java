@@ -0,0 +1,105 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.filter.Debouncer;
+import java.util.Arrays;
+import org.robolancers321.Constants.DrivetrainConstants;
+
+/**
+ * Flags swerve modules whose wheels are slipping. A module slips if its velocity disagrees with the
+ * chassis motion implied by the gyro yaw rate and the other modules, or if its wheel speeds up
+ * faster than the tread could ever push the robot, which also catches every wheel spinning at once
+ * on a hard launch.
+ */
+public class TractionMonitor {
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  private final Debouncer[] debouncers;
+  private final boolean[] slipping;
+
+  private final double[] lastSpeeds;
+  private boolean hasLastSpeeds = false;
+
+  // scratch for the median chassis velocity
+  private final double[] chassisVxEstimates;
+  private final double[] chassisVyEstimates;
+
+  public TractionMonitor(double[] moduleX, double[] moduleY) {
+    this.moduleCount = moduleX.length;
+    this.moduleX = moduleX.clone();
+    this.moduleY = moduleY.clone();
+
+    this.debouncers = new Debouncer[this.moduleCount];
+    this.slipping = new boolean[this.moduleCount];
+    this.lastSpeeds = new double[this.moduleCount];
+    this.chassisVxEstimates = new double[this.moduleCount];
+    this.chassisVyEstimates = new double[this.moduleCount];
+
+    for (int i = 0; i < this.moduleCount; i++)
+      this.debouncers[i] =
+          new Debouncer(DrivetrainConstants.kSlipDebounceSeconds, Debouncer.DebounceType.kBoth);
+  }
+
+  private static double median(double[] values) {
+    Arrays.sort(values);
+
+    int middle = values.length / 2;
+
+    return values.length % 2 == 0 ? 0.5 * (values[middle - 1] + values[middle]) : values[middle];
+  }
+
+  /**
+   * Updates the slip flags from measured module speeds (signed, m/s) and angles (rad), the gyro yaw
+   * rate (rad/s) and the time since the last update.
+   */
+  public void update(double[] speeds, double[] anglesRad, double yawRate, double dt) {
+    // every module gives its own guess at the chassis velocity once rotation is taken out
+    for (int i = 0; i < this.moduleCount; i++) {
+      this.chassisVxEstimates[i] = speeds[i] * Math.cos(anglesRad[i]) + yawRate * this.moduleY[i];
+      this.chassisVyEstimates[i] = speeds[i] * Math.sin(anglesRad[i]) - yawRate * this.moduleX[i];
+    }
+
+    // the median ignores a minority of slipping modules
+    double chassisVx = median(this.chassisVxEstimates);
+    double chassisVy = median(this.chassisVyEstimates);
+
+    for (int i = 0; i < this.moduleCount; i++) {
+      double expectedVx = chassisVx - yawRate * this.moduleY[i];
+      double expectedVy = chassisVy + yawRate * this.moduleX[i];
+
+      double errorX = speeds[i] * Math.cos(anglesRad[i]) - expectedVx;
+      double errorY = speeds[i] * Math.sin(anglesRad[i]) - expectedVy;
+      double error = Math.hypot(errorX, errorY);
+      double expectedSpeed =
+          Math.max(Math.hypot(expectedVx, expectedVy), DrivetrainConstants.kMinSlipSpeed);
+
+      boolean disagrees =
+          error > DrivetrainConstants.kMinSlipSpeed
+              && error > DrivetrainConstants.kSlipRatio * expectedSpeed;
+
+      // only a wheel speeding up can be spinning out, braking hard is not slip
+      boolean overAccelerating =
+          this.hasLastSpeeds
+              && dt > 0.0
+              && (Math.abs(speeds[i]) - Math.abs(this.lastSpeeds[i])) / dt
+                  > DrivetrainConstants.kSlipAcceleration;
+
+      this.slipping[i] = this.debouncers[i].calculate(disagrees || overAccelerating);
+      this.lastSpeeds[i] = speeds[i];
+    }
+
+    this.hasLastSpeeds = true;
+  }
+
+  public boolean isSlipping(int module) {
+    return this.slipping[module];
+  }
+
+  public boolean anySlipping() {
+    for (boolean moduleSlipping : this.slipping) if (moduleSlipping) return true;
+
+    return false;
+  }
+}
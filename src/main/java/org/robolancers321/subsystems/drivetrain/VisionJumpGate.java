@@ -0,0 +1,49 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+/**
+ * Decides whether a vision estimate may correct odometry. An estimate far from where odometry had
+ * the robot when the frame was captured is more likely a bad solve than drift and is held back. It
+ * is let through anyway while a wheel is slipping, or once enough estimates in a row land at the
+ * same offset, since then odometry is the one that is off, after a hit or a bad starting pose.
+ */
+public class VisionJumpGate {
+  private final double maxJumpMeters;
+  private final double agreementMeters;
+  private final int confirmCount;
+
+  // offset of the latest run of estimates that disagreed with odometry
+  private int jumpCount = 0;
+  private double jumpX = 0.0;
+  private double jumpY = 0.0;
+
+  public VisionJumpGate(double maxJumpMeters, double agreementMeters, int confirmCount) {
+    this.maxJumpMeters = maxJumpMeters;
+    this.agreementMeters = agreementMeters;
+    this.confirmCount = confirmCount;
+  }
+
+  /** Whether to fuse an estimate, given where odometry had the robot at its capture time. */
+  public boolean accept(
+      double estimateX, double estimateY, double odometryX, double odometryY, boolean slipping) {
+    double jumpX = estimateX - odometryX;
+    double jumpY = estimateY - odometryY;
+
+    // a slipping wheel drags odometry off, so that is exactly when vision should win
+    if (Math.hypot(jumpX, jumpY) <= this.maxJumpMeters || slipping) {
+      this.jumpCount = 0;
+
+      return true;
+    }
+
+    boolean agrees =
+        this.jumpCount > 0
+            && Math.hypot(jumpX - this.jumpX, jumpY - this.jumpY) <= this.agreementMeters;
+
+    this.jumpCount = agrees ? this.jumpCount + 1 : 1;
+    this.jumpX = jumpX;
+    this.jumpY = jumpY;
+
+    return this.jumpCount >= this.confirmCount;
+  }
+}
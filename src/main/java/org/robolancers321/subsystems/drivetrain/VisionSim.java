@@ -0,0 +1,110 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.drivetrain;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.smartdashboard.Field2d;
+import org.photonvision.PhotonCamera;
+import org.photonvision.estimation.TargetModel;
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.SimCameraProperties;
+import org.photonvision.simulation.VisionSystemSim;
+import org.photonvision.simulation.VisionTargetSim;
+import org.robolancers321.Constants.DrivetrainConstants;
+import org.robolancers321.util.Assets;
+
+/**
+ * Simulated AprilTag and note cameras that publish frames through PhotonVision's normal network
+ * tables path, so the real vision code runs unchanged against them. Tags and notes live in separate
+ * vision systems so the tag cameras never report notes and the note camera never reports tags.
+ * Nothing here needs a display, so it also runs headless inside unit tests.
+ */
+public class VisionSim {
+  private final VisionSystemSim tagSystem = new VisionSystemSim("apriltags");
+  private final VisionSystemSim noteSystem = new VisionSystemSim("notes");
+
+  private final TargetModel noteModel =
+      new TargetModel(
+          DrivetrainConstants.kSimNoteDiameterMeters,
+          DrivetrainConstants.kSimNoteDiameterMeters,
+          DrivetrainConstants.kSimNoteHeightMeters);
+
+  public VisionSim() {
+    this.tagSystem.addAprilTags(Assets.aprilTagLayout.join());
+  }
+
+  /** Camera properties from the sim constants, with the given diagonal field of view. */
+  public static SimCameraProperties cameraProperties(double fovDeg) {
+    SimCameraProperties properties = new SimCameraProperties();
+
+    properties.setCalibration(
+        DrivetrainConstants.kSimCameraWidthPixels,
+        DrivetrainConstants.kSimCameraHeightPixels,
+        Rotation2d.fromDegrees(fovDeg));
+    properties.setCalibError(
+        DrivetrainConstants.kSimCameraPixelErrorMean,
+        DrivetrainConstants.kSimCameraPixelErrorStdDev);
+    properties.setFPS(DrivetrainConstants.kSimCameraFps);
+    properties.setAvgLatencyMs(DrivetrainConstants.kSimCameraLatencyMs);
+    properties.setLatencyStdDevMs(DrivetrainConstants.kSimCameraLatencyStdDevMs);
+
+    return properties;
+  }
+
+  private static PhotonCameraSim createCameraSim(
+      PhotonCamera camera, SimCameraProperties properties) {
+    PhotonCameraSim cameraSim = new PhotonCameraSim(camera, properties);
+
+    // the video streams are only for looking at, and cost a render per frame
+    cameraSim.enableRawStream(false);
+    cameraSim.enableProcessedStream(false);
+    cameraSim.enableDrawWireframe(false);
+
+    return cameraSim;
+  }
+
+  public void addTagCamera(
+      PhotonCamera camera, Transform3d robotToCamera, SimCameraProperties properties) {
+    this.tagSystem.addCamera(createCameraSim(camera, properties), robotToCamera);
+  }
+
+  public void addNoteCamera(
+      PhotonCamera camera, Transform3d robotToCamera, SimCameraProperties properties) {
+    this.noteSystem.addCamera(createCameraSim(camera, properties), robotToCamera);
+  }
+
+  public void addNote(Translation2d position) {
+    this.noteSystem.addVisionTargets(
+        "note",
+        new VisionTargetSim(
+            new Pose3d(
+                position.getX(),
+                position.getY(),
+                0.5 * DrivetrainConstants.kSimNoteHeightMeters,
+                new Rotation3d()),
+            this.noteModel));
+  }
+
+  public void clearNotes() {
+    this.noteSystem.removeVisionTargets("note");
+  }
+
+  /** Renders a frame from every camera that is due one, seen from the given true robot pose. */
+  public void update(Pose2d robotPose) {
+    this.tagSystem.update(robotPose);
+    this.noteSystem.update(robotPose);
+  }
+
+  public void resetRobotPose(Pose2d robotPose) {
+    this.tagSystem.resetRobotPose(robotPose);
+    this.noteSystem.resetRobotPose(robotPose);
+  }
+
+  public Field2d getDebugField() {
+    return this.tagSystem.getDebugField();
+  }
+}
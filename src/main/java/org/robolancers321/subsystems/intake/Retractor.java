@@ -11,19 +11,22 @@ import com.revrobotics.CANSparkMax;
 import com.revrobotics.SparkAbsoluteEncoder.Type;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.ArmFeedforward;
-import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import java.util.function.DoubleSupplier;
 import org.robolancers321.Constants.RetractorConstants;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.MonitoredSubsystem;
+import org.robolancers321.util.MotionProfile;
 
-public class Retractor extends SubsystemBase {
+public class Retractor extends MonitoredSubsystem {
   /*
    * Singleton
    */
@@ -31,7 +34,7 @@ public class Retractor extends SubsystemBase {
   private static Retractor instance = null;
 
   public static Retractor getInstance() {
-    if (instance == null) instance = new Retractor();
+    if (instance == null) instance = BootProfiler.time("Retractor", Retractor::new);
 
     return instance;
   }
@@ -42,11 +45,30 @@ public class Retractor extends SubsystemBase {
 
   private final CANSparkMax motor;
   private final AbsoluteEncoder encoder;
-  private ArmFeedforward feedforwardController;
-  private PIDController feedbackController;
-  private TrapezoidProfile motionProfile;
-  private TrapezoidProfile.State previousReference;
-  private TrapezoidProfile.State goalReference;
+
+  // the control loop runs on its own notifier thread, everything it shares is guarded by this lock
+  private final Object controlLock = new Object();
+  private final Notifier controlLoop;
+  private double lastControlTimestamp;
+
+  private volatile ArmFeedforward feedforwardController;
+  private volatile MotionProfile motionProfile;
+  private volatile TrapezoidProfile.State previousReference;
+  private volatile TrapezoidProfile.State goalReference;
+
+  // pid state, stepped by hand with the measured dt since PIDController assumes a fixed period
+  private double feedbackP = RetractorConstants.kP;
+  private double feedbackI = RetractorConstants.kI;
+  private double feedbackD = RetractorConstants.kD;
+  private double feedbackIntegral = 0.0;
+  private double previousError = 0.0;
+  private boolean wasEnabled = false;
+
+  // last controller outputs, logged from the main loop instead of the control thread
+  private volatile double feedforwardOutput = 0.0;
+  private volatile double feedbackOutput = 0.0;
+  private volatile double controlLoopDt = RetractorConstants.kControlLoopPeriodSeconds;
+
   private Timer timer;
 
   private Retractor() {
@@ -54,19 +76,21 @@ public class Retractor extends SubsystemBase {
     this.encoder = this.motor.getAbsoluteEncoder(Type.kDutyCycle);
     this.feedforwardController =
         new ArmFeedforward(RetractorConstants.kS, RetractorConstants.kG, RetractorConstants.kV);
-    this.feedbackController =
-        new PIDController(RetractorConstants.kP, RetractorConstants.kI, RetractorConstants.kD);
-    this.motionProfile = new TrapezoidProfile(RetractorConstants.kProfileConstraints);
+    this.motionProfile = createProfile(RetractorConstants.kProfileConstraints);
     this.previousReference = new TrapezoidProfile.State(this.getPositionDeg(), 0);
     this.goalReference = previousReference;
 
     this.configureMotor();
     this.configureEncoder();
-    this.configureController();
     this.motor.burnFlash();
 
     this.timer = new Timer();
     this.timer.start();
+
+    this.lastControlTimestamp = Timer.getFPGATimestamp();
+    this.controlLoop = new Notifier(this::runControlLoop);
+    this.controlLoop.setName("Retractor Control Loop");
+    this.controlLoop.startPeriodic(RetractorConstants.kControlLoopPeriodSeconds);
   }
 
   private void configureMotor() {
@@ -74,8 +98,11 @@ public class Retractor extends SubsystemBase {
     this.motor.setIdleMode(CANSparkBase.IdleMode.kBrake);
     this.motor.setSmartCurrentLimit(RetractorConstants.kCurrentLimit);
     this.motor.enableVoltageCompensation(12);
-    this.motor.setPeriodicFramePeriod(PeriodicFrame.kStatus5, 20);
-    this.motor.setPeriodicFramePeriod(PeriodicFrame.kStatus6, 20);
+    // abs encoder frames need to arrive as fast as the control loop runs
+    this.motor.setPeriodicFramePeriod(
+        PeriodicFrame.kStatus5, RetractorConstants.kEncoderFramePeriodMs);
+    this.motor.setPeriodicFramePeriod(
+        PeriodicFrame.kStatus6, RetractorConstants.kEncoderFramePeriodMs);
     this.motor.setPeriodicFramePeriod(PeriodicFrame.kStatus4, 30000);
     this.motor.setPeriodicFramePeriod(PeriodicFrame.kStatus3, 30000);
 
@@ -97,13 +124,6 @@ public class Retractor extends SubsystemBase {
     this.encoder.setVelocityConversionFactor(RetractorConstants.kGearRatio);
   }
 
-  private void configureController() {
-    // super.m_controller.enableContinuousInput(-180.0, 180.0);
-    feedbackController.disableContinuousInput();
-    feedbackController.setTolerance(RetractorConstants.kToleranceDeg);
-    feedbackController.setSetpoint(previousReference.position);
-  }
-
   public double getPositionDeg() {
     return MathUtil.clamp(
         this.encoder.getPosition() > 270
@@ -134,32 +154,108 @@ public class Retractor extends SubsystemBase {
     }
   }
 
+  private static MotionProfile createProfile(Constraints constraints) {
+    return switch (RetractorConstants.kProfileType) {
+      case kSCurve -> MotionProfile.sCurve(constraints, RetractorConstants.kMaxJerkDeg);
+      case kExponential -> MotionProfile.exponential(
+          RetractorConstants.kProfileMaxInputVolts,
+          RetractorConstants.kProfileKV,
+          RetractorConstants.kProfileKA);
+      default -> MotionProfile.trapezoid(constraints);
+    };
+  }
+
+  private void setProfile(MotionProfile profile) {
+    synchronized (this.controlLock) {
+      this.motionProfile = profile;
+    }
+  }
+
   private void setGoal(double position) {
-    goalReference = new TrapezoidProfile.State(position, 0);
+    synchronized (this.controlLock) {
+      goalReference = new TrapezoidProfile.State(position, 0);
+    }
   }
 
-  protected void useOutput(TrapezoidProfile.State setpoint) {
-    double feedforwardOutput =
+  private double calculateFeedback(double setpointDeg, double dt) {
+    double error = setpointDeg - this.getPositionDeg();
+    double derivative = (error - this.previousError) / dt;
+
+    this.previousError = error;
+
+    // same anti windup as PIDController, the integral term alone can't exceed full output
+    if (this.feedbackI != 0.0)
+      this.feedbackIntegral =
+          MathUtil.clamp(
+              this.feedbackIntegral + error * dt, -1.0 / this.feedbackI, 1.0 / this.feedbackI);
+
+    return this.feedbackP * error
+        + this.feedbackI * this.feedbackIntegral
+        + this.feedbackD * derivative;
+  }
+
+  protected void useOutput(TrapezoidProfile.State setpoint, double dt) {
+    this.feedforwardOutput =
         this.feedforwardController.calculate(
             setpoint.position * Math.PI / 180.0, setpoint.velocity * Math.PI / 180.0);
 
-    SmartDashboard.putNumber("retractor position setpoint mp (deg)", setpoint.position);
-    SmartDashboard.putNumber("retractor velocity setpoint mp (deg)", setpoint.velocity);
+    this.feedbackOutput = this.calculateFeedback(setpoint.position, dt);
+
+    this.motor.set(this.feedforwardOutput + this.feedbackOutput);
+  }
+
+  // runs on the notifier thread at kControlLoopPeriodSeconds
+  private void runControlLoop() {
+    synchronized (this.controlLock) {
+      double now = Timer.getFPGATimestamp();
+      double dt = now - this.lastControlTimestamp;
+      this.lastControlTimestamp = now;
 
-    SmartDashboard.putNumber("retractor ff output", feedforwardOutput);
+      // fall back to the nominal period after the notifier thread stalls, behind the scheduler
+      // or a gc pause, and drop the error history since it is stale by then
+      if (dt <= 0.0 || dt > RetractorConstants.kMaxControlLoopDtSeconds) {
+        dt = RetractorConstants.kControlLoopPeriodSeconds;
 
-    double feedbackOutput = feedbackController.calculate(this.getPositionDeg(), setpoint.position);
+        this.previousError = previousReference.position - this.getPositionDeg();
+        this.feedbackIntegral = 0.0;
+      }
 
-    SmartDashboard.putNumber("retractor fb output", feedbackOutput);
+      // the loop keeps running while disabled, where the reference walks on to the goal without
+      // the arm, so restart the profile from wherever the arm actually is on enable
+      boolean enabled = DriverStation.isEnabled();
 
-    double controllerOutput = feedforwardOutput + feedbackOutput;
+      if (enabled && !this.wasEnabled) {
+        previousReference = new TrapezoidProfile.State(this.getPositionDeg(), 0.0);
 
-    SmartDashboard.putNumber("retractor controller output", controllerOutput);
+        this.previousError = 0.0;
+        this.feedbackIntegral = 0.0;
+      }
 
-    this.motor.set(controllerOutput);
+      this.wasEnabled = enabled;
+
+      // the profile and the pid terms both step by the measured dt, the notifier's period jitters
+      this.controlLoopDt = dt;
+
+      // update assumed position with next profile timestamp
+      previousReference = motionProfile.calculate(dt, previousReference, goalReference);
+
+      // set position to where we're supposed to be. Velocity isn't an input, so can't interupt
+      useOutput(previousReference, dt);
+    }
   }
 
   private void doSendables() {
+    TrapezoidProfile.State setpoint = this.previousReference;
+
+    SmartDashboard.putNumber("retractor position setpoint mp (deg)", setpoint.position);
+    SmartDashboard.putNumber("retractor velocity setpoint mp (deg)", setpoint.velocity);
+
+    SmartDashboard.putNumber("retractor ff output", this.feedforwardOutput);
+    SmartDashboard.putNumber("retractor fb output", this.feedbackOutput);
+    SmartDashboard.putNumber(
+        "retractor controller output", this.feedforwardOutput + this.feedbackOutput);
+    SmartDashboard.putNumber("retractor control loop dt (s)", this.controlLoopDt);
+
     SmartDashboard.putBoolean("retractor at goal", this.atGoal());
     SmartDashboard.putNumber("retractor position (deg)", this.getPositionDeg());
     SmartDashboard.putNumber("retractor velocity (deg)", this.getVelocityDeg());
@@ -169,14 +265,8 @@ public class Retractor extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
-
-    // update assumed position with next profile timestamp
-    previousReference = motionProfile.calculate(0.02, previousReference, goalReference);
-
-    // set position to where we're supposed to be. Velocity isn't an input, so can't interupt
-    useOutput(previousReference);
-
+  protected void monitoredPeriodic() {
+    // profile and controllers are stepped by the notifier, only log here
     this.doSendables();
   }
 
@@ -211,20 +301,24 @@ public class Retractor extends SubsystemBase {
     double tunedI = SmartDashboard.getNumber("retractor ki", RetractorConstants.kI);
     double tunedD = SmartDashboard.getNumber("retractor kd", RetractorConstants.kD);
 
-    this.feedbackController.setPID(tunedP, tunedI, tunedD);
-
     double tunedS = SmartDashboard.getNumber("retractor ks", RetractorConstants.kS);
     double tunedV = SmartDashboard.getNumber("retractor kv", RetractorConstants.kV);
     double tunedG = SmartDashboard.getNumber("retractor kg", RetractorConstants.kG);
 
-    this.feedforwardController = new ArmFeedforward(tunedS, tunedG, tunedV);
-
     double tunedMaxVel =
         SmartDashboard.getNumber("retractor max vel (deg)", RetractorConstants.kMaxVelocityDeg);
     double tunedMaxAcc =
         SmartDashboard.getNumber("retractor max acc (deg)", RetractorConstants.kMaxAccelerationDeg);
 
-    this.motionProfile = new TrapezoidProfile(new Constraints(tunedMaxVel, tunedMaxAcc));
+    synchronized (this.controlLock) {
+      this.feedbackP = tunedP;
+      this.feedbackI = tunedI;
+      this.feedbackD = tunedD;
+      this.feedbackIntegral = 0.0;
+      this.feedforwardController = new ArmFeedforward(tunedS, tunedG, tunedV);
+      this.motionProfile = createProfile(new Constraints(tunedMaxVel, tunedMaxAcc));
+    }
+
     this.setGoal(
         MathUtil.clamp(
             SmartDashboard.getNumber("retractor target position (deg)", goalReference.position),
@@ -256,6 +350,16 @@ public class Retractor extends SubsystemBase {
     return this.moveToAngle(() -> angleDeg);
   }
 
+  /**
+   * Moves with temporary profile limits, used to keep the retractor in step with the pivot. Always
+   * a trapezoid since that is what the coordinated move timing is planned against.
+   */
+  public Command moveToAngle(double angleDeg, Constraints constraints) {
+    return this.moveToAngle(angleDeg)
+        .beforeStarting(() -> this.setProfile(MotionProfile.trapezoid(constraints)))
+        .finallyDo(() -> this.setProfile(createProfile(RetractorConstants.kProfileConstraints)));
+  }
+
   public Command moveToRetracted() {
     return this.moveToAngle(RetractorConstants.RetractorSetpoint.kRetracted.angle);
   }
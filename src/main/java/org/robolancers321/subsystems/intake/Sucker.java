@@ -4,13 +4,14 @@ package org.robolancers321.subsystems.intake;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.RelativeEncoder;
-import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import org.robolancers321.Constants.SuckerConstants;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.MonitoredSubsystem;
+import org.robolancers321.util.TimestampedDigitalInput;
 
-public class Sucker extends SubsystemBase {
+public class Sucker extends MonitoredSubsystem {
   /*
    * Singleton
    */
@@ -18,7 +19,7 @@ public class Sucker extends SubsystemBase {
   private static Sucker instance = null;
 
   public static Sucker getInstance() {
-    if (instance == null) instance = new Sucker();
+    if (instance == null) instance = BootProfiler.time("Sucker", Sucker::new);
 
     return instance;
   }
@@ -30,15 +31,22 @@ public class Sucker extends SubsystemBase {
   private final CANSparkMax motor;
   private final RelativeEncoder encoder;
 
-  private final DigitalInput touchSensor;
+  private final TimestampedDigitalInput touchSensor;
+
+  // written from the touch sensor interrupt thread
+  private volatile boolean stopOnTouchArmed = false;
+  private volatile boolean stoppedOnTouch = false;
 
   private Sucker() {
     this.motor = new CANSparkMax(SuckerConstants.kMotorPort, MotorType.kBrushless);
     this.encoder = this.motor.getEncoder();
-    this.touchSensor = new DigitalInput(SuckerConstants.kTouchSensorPort);
+
+    // touch sensor pulls low when pressed
+    this.touchSensor = new TimestampedDigitalInput(SuckerConstants.kTouchSensorPort, true);
 
     this.configureMotor();
     this.configureEncoder();
+    this.configureTouchSensor();
     this.motor.burnFlash();
   }
 
@@ -53,22 +61,51 @@ public class Sucker extends SubsystemBase {
     this.encoder.setVelocityConversionFactor(1.0);
   }
 
+  private void configureTouchSensor() {
+    this.touchSensor.setOnActivated(this::onTouch);
+  }
+
+  // runs on the interrupt thread, cuts the motor without waiting for the next loop. revlib
+  // serializes calls to a device in its native layer, so this can't corrupt a frame the main
+  // thread is sending. the only main thread write that can land after this stop is a set from the
+  // same loop's execute, and inUntilNote sees the latch in isFinished right after and stops the
+  // motor again in finallyDo
+  private void onTouch() {
+    if (!this.stopOnTouchArmed) return;
+
+    this.stopOnTouchArmed = false;
+    this.stoppedOnTouch = true;
+    this.motor.stopMotor();
+  }
+
   public double getVelocityRPM() {
     return this.encoder.getVelocity();
   }
 
   public boolean noteDetected() {
-    return !this.touchSensor.get();
+    return this.touchSensor.isActive();
+  }
+
+  /** FPGA timestamp (s) at which the touch sensor last detected a note. */
+  public double getNoteDetectedTimestamp() {
+    return this.touchSensor.getLastActivatedTimestamp();
+  }
+
+  /** FPGA timestamp (s) at which the touch sensor last stopped detecting a note. */
+  public double getNoteReleasedTimestamp() {
+    return this.touchSensor.getLastDeactivatedTimestamp();
   }
 
   private void doSendables() {
     SmartDashboard.putNumber("sucker rpm", this.getVelocityRPM());
     SmartDashboard.putBoolean("sucker detects note", this.noteDetected());
     SmartDashboard.putNumber("sucker output", this.motor.get());
+    SmartDashboard.putNumber("sucker note detected timestamp", this.getNoteDetectedTimestamp());
+    SmartDashboard.putNumber("sucker note released timestamp", this.getNoteReleasedTimestamp());
   }
 
   @Override
-  public void periodic() {
+  protected void monitoredPeriodic() {
     this.doSendables();
   }
 
@@ -96,6 +133,27 @@ public class Sucker extends SubsystemBase {
             });
   }
 
+  /** Intakes until the touch sensor fires, stopping the motor straight from the interrupt. */
+  public Command inUntilNote() {
+    return runOnce(
+            () -> {
+              this.stoppedOnTouch = false;
+              this.stopOnTouchArmed = SuckerConstants.kStopOnTouchEdge;
+            })
+        .andThen(
+            run(
+                () -> {
+                  if (!this.stoppedOnTouch) this.motor.set(SuckerConstants.kInSpeed);
+                }))
+        // end on the latch too, so a bouncing sensor can't leave the command running stopped
+        .until(() -> this.stoppedOnTouch || this.noteDetected())
+        .finallyDo(
+            () -> {
+              this.stopOnTouchArmed = false;
+              this.motor.set(0.0);
+            });
+  }
+
   public Command ampShot() {
     return run(
         () -> {
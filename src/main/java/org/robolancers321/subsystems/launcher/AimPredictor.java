@@ -0,0 +1,157 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.subsystems.launcher;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.filter.LinearFilter;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import org.robolancers321.Constants.AimConstants;
+import org.robolancers321.subsystems.drivetrain.Drivetrain;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.FieldLayout;
+import org.robolancers321.util.FieldLayout.Landmark;
+import org.robolancers321.util.VirtualSubsystem;
+
+/**
+ * Aims each mechanism at where the robot will be once that mechanism gets there, instead of where
+ * the robot is now. Every loop the pose is projected forward by each mechanism's actuation latency
+ * using the chassis velocity and a filtered acceleration, and the speaker distance and heading are
+ * computed from those predicted positions.
+ */
+public class AimPredictor extends VirtualSubsystem {
+  /*
+   * Singleton
+   */
+
+  private static AimPredictor instance = null;
+
+  public static AimPredictor getInstance() {
+    if (instance == null) instance = BootProfiler.time("AimPredictor", AimPredictor::new);
+
+    return instance;
+  }
+
+  /*
+   * Implementation
+   */
+
+  private final Drivetrain drivetrain;
+  private final FieldLayout fieldLayout;
+
+  private final LinearFilter accelerationXFilter =
+      LinearFilter.singlePoleIIR(AimConstants.kAccelerationFilterTimeConstant, 0.02);
+  private final LinearFilter accelerationYFilter =
+      LinearFilter.singlePoleIIR(AimConstants.kAccelerationFilterTimeConstant, 0.02);
+
+  private double lastTimestamp = Double.NaN;
+  private double lastVx = 0.0;
+  private double lastVy = 0.0;
+
+  private double x;
+  private double y;
+  private double vx;
+  private double vy;
+  private double ax = 0.0;
+  private double ay = 0.0;
+
+  private double pivotDistance;
+  private double flywheelDistance;
+  private double headingTargetDeg;
+
+  private AimPredictor() {
+    this.drivetrain = Drivetrain.getInstance();
+    this.fieldLayout = FieldLayout.getInstance();
+
+    this.periodic();
+  }
+
+  private double predictX(double latencySeconds) {
+    return this.x + this.vx * latencySeconds + 0.5 * this.ax * latencySeconds * latencySeconds;
+  }
+
+  private double predictY(double latencySeconds) {
+    return this.y + this.vy * latencySeconds + 0.5 * this.ay * latencySeconds * latencySeconds;
+  }
+
+  private double predictSpeakerDistance(double latencySeconds) {
+    return this.fieldLayout.distanceTo(
+        Landmark.kSpeaker, 0, this.predictX(latencySeconds), this.predictY(latencySeconds));
+  }
+
+  /** Speaker distance to look up the pivot angle with. */
+  public double getPivotDistance() {
+    return this.pivotDistance;
+  }
+
+  /** Speaker distance to look up the flywheel rpm with. */
+  public double getFlywheelDistance() {
+    return this.flywheelDistance;
+  }
+
+  /** Field heading that points the launcher, on the back of the robot, at the speaker. */
+  public double getHeadingTargetDeg() {
+    return this.headingTargetDeg;
+  }
+
+  private void updateMotion() {
+    double timestamp = Timer.getFPGATimestamp();
+
+    Pose2d pose = this.drivetrain.getPose();
+    ChassisSpeeds fieldVelocity = this.drivetrain.getFieldVelocity();
+
+    this.x = pose.getX();
+    this.y = pose.getY();
+    this.vx = fieldVelocity.vxMetersPerSecond;
+    this.vy = fieldVelocity.vyMetersPerSecond;
+
+    double dt = timestamp - this.lastTimestamp;
+
+    if (dt > 0.0) {
+      double maxAcceleration = AimConstants.kMaxPredictedAcceleration;
+
+      this.ax =
+          MathUtil.clamp(
+              this.accelerationXFilter.calculate((this.vx - this.lastVx) / dt),
+              -maxAcceleration,
+              maxAcceleration);
+      this.ay =
+          MathUtil.clamp(
+              this.accelerationYFilter.calculate((this.vy - this.lastVy) / dt),
+              -maxAcceleration,
+              maxAcceleration);
+    }
+
+    this.lastTimestamp = timestamp;
+    this.lastVx = this.vx;
+    this.lastVy = this.vy;
+  }
+
+  private void doSendables() {
+    SmartDashboard.putNumber("aim pivot distance (m)", this.pivotDistance);
+    SmartDashboard.putNumber("aim flywheel distance (m)", this.flywheelDistance);
+    SmartDashboard.putNumber("aim heading target (deg)", this.headingTargetDeg);
+  }
+
+  @Override
+  public void periodic() {
+    this.updateMotion();
+
+    this.pivotDistance = this.predictSpeakerDistance(AimConstants.kPivotLatencySeconds);
+    this.flywheelDistance = this.predictSpeakerDistance(AimConstants.kFlywheelLatencySeconds);
+
+    double headingX = this.predictX(AimConstants.kHeadingLatencySeconds);
+    double headingY = this.predictY(AimConstants.kHeadingLatencySeconds);
+
+    double bearingDeg =
+        Math.toDegrees(
+            Math.atan2(
+                this.fieldLayout.getY(Landmark.kSpeaker, 0) - headingY,
+                this.fieldLayout.getX(Landmark.kSpeaker, 0) - headingX));
+
+    this.headingTargetDeg = MathUtil.inputModulus(bearingDeg + 180.0, -180.0, 180.0);
+
+    this.doSendables();
+  }
+}
@@ -5,19 +5,35 @@ import static org.robolancers321.util.MathUtils.epsilonEquals;
 
 import com.revrobotics.*;
 import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.BangBangController;
+import edu.wpi.first.math.controller.LinearQuadraticRegulator;
+import edu.wpi.first.math.estimator.KalmanFilter;
 import edu.wpi.first.math.filter.SlewRateLimiter;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.system.LinearSystem;
+import edu.wpi.first.math.system.LinearSystemLoop;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.FlywheelSim;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import java.util.function.DoubleSupplier;
 import org.robolancers321.Constants.FlywheelConstants;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.MonitoredSubsystem;
 
-public class Flywheel extends SubsystemBase {
+public class Flywheel extends MonitoredSubsystem {
   private static Flywheel instance = null;
 
   public static Flywheel getInstance() {
-    if (instance == null) instance = new Flywheel();
+    if (instance == null) instance = BootProfiler.time("Flywheel", Flywheel::new);
 
     return instance;
   }
@@ -32,8 +48,29 @@ public class Flywheel extends SubsystemBase {
 
   private final SlewRateLimiter limiter;
 
+  // rebuilt when kff or ka is tuned
+  private LinearSystem<N1, N1, N1> plant;
+  private LinearSystemLoop<N1, N1, N1> loop;
+  private final BangBangController bangBangController;
+
+  private FlywheelSim flywheelSim = null;
+  private double simInputVolts = 0.0;
+
   private double goalRPM = 0.0;
 
+  private double ff = FlywheelConstants.kFF;
+  private double kA = FlywheelConstants.kA;
+
+  // recovery tracking, a dip starts when the flywheel falls out of tolerance without a goal change
+  private boolean wasRevved = false;
+  private double revvedGoalRPM = 0.0;
+  private boolean recovering = false;
+  private double dipStartTimestamp = 0.0;
+  private double dipMinRPM = 0.0;
+  private double lastDipRPM = 0.0;
+  private double lastRecoverySeconds = 0.0;
+  private int recoveryCount = 0;
+
   private Flywheel() {
     this.motor =
         new CANSparkFlex(FlywheelConstants.kMotorPort, CANSparkLowLevel.MotorType.kBrushless);
@@ -44,10 +81,44 @@ public class Flywheel extends SubsystemBase {
 
     this.limiter = new SlewRateLimiter(FlywheelConstants.kRampUpRate);
 
+    this.plant = LinearSystemId.identifyVelocitySystem(FlywheelConstants.kV, FlywheelConstants.kA);
+    this.loop = this.buildStateSpaceLoop();
+    this.bangBangController = new BangBangController();
+
     this.configureMotor();
     this.configureEncoder();
     this.configureController();
     this.motor.burnFlash();
+
+    if (RobotBase.isSimulation()) this.configureSimulation();
+  }
+
+  private LinearSystemLoop<N1, N1, N1> buildStateSpaceLoop() {
+    KalmanFilter<N1, N1, N1> observer =
+        new KalmanFilter<>(
+            Nat.N1(),
+            Nat.N1(),
+            this.plant,
+            VecBuilder.fill(FlywheelConstants.kModelStdDevRadPerSec),
+            VecBuilder.fill(FlywheelConstants.kEncoderStdDevRadPerSec),
+            0.02);
+
+    LinearQuadraticRegulator<N1, N1, N1> regulator =
+        new LinearQuadraticRegulator<>(
+            this.plant,
+            VecBuilder.fill(FlywheelConstants.kVelocityErrorToleranceRadPerSec),
+            VecBuilder.fill(FlywheelConstants.kMaxControlEffortVolts),
+            0.02);
+
+    return new LinearSystemLoop<>(
+        this.plant, regulator, observer, FlywheelConstants.kMaxControlEffortVolts, 0.02);
+  }
+
+  private void configureSimulation() {
+    this.flywheelSim =
+        new FlywheelSim(this.plant, DCMotor.getNeoVortex(1), FlywheelConstants.kGearing);
+
+    SmartDashboard.putData("flywheel simulate shot", this.simulateShot());
   }
 
   private void configureMotor() {
@@ -73,7 +144,9 @@ public class Flywheel extends SubsystemBase {
     this.controller.setFF(FlywheelConstants.kFF);
   }
 
-  private double getRPM() {
+  public double getRPM() {
+    if (this.flywheelSim != null) return this.flywheelSim.getAngularVelocityRPM();
+
     return this.encoder.getVelocity();
   }
 
@@ -82,12 +155,110 @@ public class Flywheel extends SubsystemBase {
   }
 
   private void useController() {
-    if (this.goalRPM - this.getRPM() > 2 * FlywheelConstants.kToleranceRPM)
-      this.controller.setFF(10 * FlywheelConstants.kFF);
-    else this.controller.setFF(FlywheelConstants.kFF);
+    switch (FlywheelConstants.kControlMode) {
+      case kStateSpace -> this.useStateSpaceController();
+      case kBangBang -> this.useBangBangController();
+      default -> this.useFeedforwardController();
+    }
+  }
+
+  // the spark already holds ff, it is only written again when tuned
+  private void useFeedforwardController() {
+    double referenceRPM = this.limiter.calculate(this.goalRPM);
+
+    this.controller.setReference(referenceRPM, CANSparkBase.ControlType.kVelocity);
+
+    this.simInputVolts = 12.0 * this.ff * referenceRPM;
+  }
+
+  private void useStateSpaceController() {
+    double measuredRadPerSec = Units.rotationsPerMinuteToRadiansPerSecond(this.getRPM());
+
+    // let the flywheel coast down in brake mode instead of actively reversing it
+    if (this.goalRPM == 0.0) {
+      this.loop.reset(VecBuilder.fill(measuredRadPerSec));
+      this.setVoltage(0.0);
+
+      return;
+    }
+
+    double referenceRadPerSec =
+        Units.rotationsPerMinuteToRadiansPerSecond(this.limiter.calculate(this.goalRPM));
+
+    this.loop.setNextR(VecBuilder.fill(referenceRadPerSec));
+    this.loop.correct(VecBuilder.fill(measuredRadPerSec));
+    this.loop.predict(0.02);
+
+    this.setVoltage(this.loop.getU(0));
+  }
+
+  private void useBangBangController() {
+    // bang bang can only push forward, fall back for the reverse shifting setpoints
+    if (this.goalRPM <= 0.0) {
+      this.useFeedforwardController();
+
+      return;
+    }
+
+    double referenceRPM = this.limiter.calculate(this.goalRPM);
+
+    double output =
+        this.bangBangController.calculate(this.getRPM(), referenceRPM)
+            + FlywheelConstants.kBangBangFeedforwardScale * this.ff * referenceRPM;
 
-    this.controller.setReference(
-        this.limiter.calculate(this.goalRPM), CANSparkBase.ControlType.kVelocity);
+    this.setVoltage(12.0 * Math.min(output, 1.0));
+  }
+
+  private void setVoltage(double volts) {
+    this.motor.setVoltage(volts);
+
+    this.simInputVolts = volts;
+  }
+
+  private void updateRecovery() {
+    boolean revved = this.isRevved();
+
+    if (revved) this.revvedGoalRPM = this.goalRPM;
+
+    if (this.recovering && this.goalRPM != this.revvedGoalRPM) this.recovering = false;
+
+    if (this.wasRevved && !revved && this.goalRPM == this.revvedGoalRPM && this.goalRPM > 0.0) {
+      this.recovering = true;
+      this.dipStartTimestamp = Timer.getFPGATimestamp();
+      this.dipMinRPM = this.getRPM();
+    }
+
+    if (this.recovering) {
+      this.dipMinRPM = Math.min(this.dipMinRPM, this.getRPM());
+
+      if (revved) {
+        this.recovering = false;
+        this.lastDipRPM = this.goalRPM - this.dipMinRPM;
+        this.lastRecoverySeconds = Timer.getFPGATimestamp() - this.dipStartTimestamp;
+        this.recoveryCount++;
+      }
+    }
+
+    this.wasRevved = revved;
+  }
+
+  /** Depth of the most recent speed dip while holding a goal, in rpm below the goal. */
+  public double getLastDipRPM() {
+    return this.lastDipRPM;
+  }
+
+  /** Time the flywheel took to get back within tolerance after its most recent dip. */
+  public double getLastRecoverySeconds() {
+    return this.lastRecoverySeconds;
+  }
+
+  /** Dips recovered from so far, goes up whenever the last dip and recovery are replaced. */
+  public int getRecoveryCount() {
+    return this.recoveryCount;
+  }
+
+  public boolean isRecovering() {
+    return this.recovering;
   }
 
   public boolean isRevved() {
@@ -101,25 +272,48 @@ public class Flywheel extends SubsystemBase {
     SmartDashboard.putBoolean("flywheel isRevved", this.isRevved());
 
     SmartDashboard.putNumber("flywheel mp goal (rpm)", this.goalRPM);
+
+    SmartDashboard.putNumber("flywheel last dip (rpm)", this.lastDipRPM);
+    SmartDashboard.putNumber("flywheel last recovery (s)", this.lastRecoverySeconds);
   }
 
   @Override
-  public void periodic() {
+  protected void monitoredPeriodic() {
     this.useController();
+    this.updateRecovery();
 
     this.doSendables();
   }
 
+  @Override
+  public void simulationPeriodic() {
+    this.flywheelSim.setInputVoltage(this.simInputVolts);
+    this.flywheelSim.update(0.02);
+  }
+
   private void initTuning() {
     SmartDashboard.putNumber(
         "flywheel kff", SmartDashboard.getNumber("flywheel kff", FlywheelConstants.kFF));
+    SmartDashboard.putNumber(
+        "flywheel ka", SmartDashboard.getNumber("flywheel ka", FlywheelConstants.kA));
     SmartDashboard.putNumber("flywheel target rpm", 0.0);
   }
 
   private void tune() {
     double tunedFF = SmartDashboard.getNumber("flywheel kff", FlywheelConstants.kFF);
+    double tunedA = SmartDashboard.getNumber("flywheel ka", FlywheelConstants.kA);
+
+    // every mode reads ff each loop, the state space model is only rebuilt when it changes
+    if (tunedFF != this.ff || tunedA != this.kA) {
+      this.ff = tunedFF;
+      this.kA = tunedA;
 
-    this.controller.setFF(tunedFF);
+      this.controller.setFF(tunedFF);
+
+      this.plant =
+          LinearSystemId.identifyVelocitySystem(12.0 * tunedFF * 60.0 / (2.0 * Math.PI), tunedA);
+      this.loop = this.buildStateSpaceLoop();
+    }
 
     this.goalRPM = SmartDashboard.getNumber("flywheel target rpm", 0.0);
   }
@@ -199,6 +393,18 @@ public class Flywheel extends SubsystemBase {
         .alongWith(new WaitUntilCommand(this::isRevved));
   }
 
+  // knocks speed off the simulated flywheel as if a note went through, no requirement so the
+  // current goal is held
+  private Command simulateShot() {
+    return Commands.runOnce(
+            () ->
+                this.flywheelSim.setState(
+                    VecBuilder.fill(
+                        (1.0 - FlywheelConstants.kSimShotDipFraction)
+                            * this.flywheelSim.getAngularVelocityRadPerSec())))
+        .ignoringDisable(true);
+  }
+
   public Command tuneController() {
     this.initTuning();
 
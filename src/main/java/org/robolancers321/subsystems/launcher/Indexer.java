@@ -5,15 +5,16 @@ import static com.revrobotics.CANSparkLowLevel.MotorType.kBrushless;
 
 import com.revrobotics.*;
 import com.revrobotics.CANSparkBase.ControlType;
-import edu.wpi.first.wpilibj.DigitalInput;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.WaitCommand;
 import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
 import org.robolancers321.Constants.IndexerConstants;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.MonitoredSubsystem;
+import org.robolancers321.util.TimestampedDigitalInput;
 
-public class Indexer extends SubsystemBase {
+public class Indexer extends MonitoredSubsystem {
   /*
    * Singleton
    */
@@ -21,7 +22,7 @@ public class Indexer extends SubsystemBase {
   private static Indexer instance = null;
 
   public static Indexer getInstance() {
-    if (instance == null) instance = new Indexer();
+    if (instance == null) instance = BootProfiler.time("Indexer", Indexer::new);
 
     return instance;
   }
@@ -34,22 +35,27 @@ public class Indexer extends SubsystemBase {
   private final SparkPIDController controller;
   private final RelativeEncoder encoder;
 
-  private final DigitalInput entranceBeamBreak;
-  private final DigitalInput exitBeamBreak;
+  private final TimestampedDigitalInput entranceBeamBreak;
+  private final TimestampedDigitalInput exitBeamBreak;
 
-  private double goalRPM = 0.0;
+  // written from the beam break interrupt thread
+  private volatile double goalRPM = 0.0;
+  private volatile boolean stopOnEntranceArmed = false;
 
   private Indexer() {
     this.motor = new CANSparkFlex(IndexerConstants.kMotorPort, kBrushless);
     this.encoder = this.motor.getEncoder();
     this.controller = this.motor.getPIDController();
 
-    this.entranceBeamBreak = new DigitalInput(IndexerConstants.kEntranceBeamBreakPort);
-    this.exitBeamBreak = new DigitalInput(IndexerConstants.kExitBeamBreakPort);
+    // beam breaks pull low when broken
+    this.entranceBeamBreak =
+        new TimestampedDigitalInput(IndexerConstants.kEntranceBeamBreakPort, true);
+    this.exitBeamBreak = new TimestampedDigitalInput(IndexerConstants.kExitBeamBreakPort, true);
 
     this.configureMotor();
     this.configureEncoder();
     this.configureController();
+    this.configureBeamBreaks();
     this.motor.burnFlash();
   }
 
@@ -71,12 +77,29 @@ public class Indexer extends SubsystemBase {
     this.controller.setFF(IndexerConstants.kFF);
   }
 
+  private void configureBeamBreaks() {
+    this.entranceBeamBreak.setOnActivated(this::onEntranceBeamBroken);
+  }
+
+  // runs on the interrupt thread, cuts the motor without waiting for the next loop
+  private void onEntranceBeamBroken() {
+    if (!this.stopOnEntranceArmed) return;
+
+    this.stopOnEntranceArmed = false;
+    this.goalRPM = 0.0;
+    this.motor.stopMotor();
+  }
+
   public double getRPM() {
     return this.encoder.getVelocity();
   }
 
+  public double getGoalRPM() {
+    return this.goalRPM;
+  }
+
   public boolean entranceBeamBroken() {
-    return !this.entranceBeamBreak.get();
+    return this.entranceBeamBreak.isActive();
   }
 
   public boolean entranceBeamNotBroken() {
@@ -84,13 +107,33 @@ public class Indexer extends SubsystemBase {
   }
 
   public boolean exitBeamBroken() {
-    return !this.exitBeamBreak.get();
+    return this.exitBeamBreak.isActive();
   }
 
   public boolean exitBeamNotBroken() {
     return !this.exitBeamBroken();
   }
 
+  /** FPGA timestamp (s) at which the entrance beam was last broken. */
+  public double getEntranceBrokenTimestamp() {
+    return this.entranceBeamBreak.getLastActivatedTimestamp();
+  }
+
+  /** FPGA timestamp (s) at which the entrance beam was last cleared. */
+  public double getEntranceClearedTimestamp() {
+    return this.entranceBeamBreak.getLastDeactivatedTimestamp();
+  }
+
+  /** FPGA timestamp (s) at which the exit beam was last broken. */
+  public double getExitBrokenTimestamp() {
+    return this.exitBeamBreak.getLastActivatedTimestamp();
+  }
+
+  /** FPGA timestamp (s) at which the exit beam was last cleared. */
+  public double getExitClearedTimestamp() {
+    return this.exitBeamBreak.getLastDeactivatedTimestamp();
+  }
+
   private void setRPM(double rpm) {
     this.controller.setReference(rpm, ControlType.kVelocity);
   }
@@ -101,10 +144,17 @@ public class Indexer extends SubsystemBase {
 
     SmartDashboard.putBoolean("indexer entrance beam broken", this.entranceBeamBroken());
     SmartDashboard.putBoolean("indexer exit beam broken", this.exitBeamBroken());
+
+    SmartDashboard.putNumber(
+        "indexer entrance broken timestamp", this.getEntranceBrokenTimestamp());
+    SmartDashboard.putNumber(
+        "indexer entrance cleared timestamp", this.getEntranceClearedTimestamp());
+    SmartDashboard.putNumber("indexer exit broken timestamp", this.getExitBrokenTimestamp());
+    SmartDashboard.putNumber("indexer exit cleared timestamp", this.getExitClearedTimestamp());
   }
 
   @Override
-  public void periodic() {
+  protected void monitoredPeriodic() {
     this.setRPM(this.goalRPM);
 
     this.doSendables();
@@ -129,6 +179,7 @@ public class Indexer extends SubsystemBase {
   public Command off() {
     return runOnce(
         () -> {
+          this.stopOnEntranceArmed = false;
           this.goalRPM = 0.0;
         });
   }
@@ -144,9 +195,11 @@ public class Indexer extends SubsystemBase {
   public Command shiftForwardToEntrance() {
     return runOnce(
             () -> {
+              this.stopOnEntranceArmed = IndexerConstants.kStopOnEntranceEdge;
               this.goalRPM = IndexerConstants.kShiftForwardFromEntranceRPM;
             })
-        .alongWith(new WaitUntilCommand(this::entranceBeamBroken).withTimeout(1.0));
+        .alongWith(new WaitUntilCommand(this::entranceBeamBroken).withTimeout(1.0))
+        .finallyDo(() -> this.stopOnEntranceArmed = false);
   }
 
   public Command shiftBackToEntrance() {
@@ -4,24 +4,26 @@ package org.robolancers321.subsystems.launcher;
 import static com.revrobotics.CANSparkLowLevel.MotorType.kBrushless;
 
 import com.revrobotics.*;
+import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkBase.SoftLimitDirection;
 import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 import com.revrobotics.SparkAbsoluteEncoder.Type;
+import com.revrobotics.SparkPIDController.ArbFFUnits;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.ArmFeedforward;
-import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import java.util.function.DoubleSupplier;
-import org.robolancers321.Constants;
 import org.robolancers321.Constants.PivotConstants;
+import org.robolancers321.util.BootProfiler;
+import org.robolancers321.util.MonitoredSubsystem;
+import org.robolancers321.util.MotionProfile;
 
-public class Pivot extends SubsystemBase {
+public class Pivot extends MonitoredSubsystem {
   /*
    * Singleton
    */
@@ -29,7 +31,7 @@ public class Pivot extends SubsystemBase {
   private static Pivot instance = null;
 
   public static Pivot getInstance() {
-    if (instance == null) instance = new Pivot();
+    if (instance == null) instance = BootProfiler.time("Pivot", Pivot::new);
 
     return instance;
   }
@@ -40,20 +42,19 @@ public class Pivot extends SubsystemBase {
 
   private final CANSparkMax motor;
   private final AbsoluteEncoder encoder;
+  private final SparkPIDController feedbackController;
   private ArmFeedforward feedforwardController;
-  private PIDController feedbackController;
-  private TrapezoidProfile motionProfile;
+  private MotionProfile motionProfile;
   private TrapezoidProfile.State previousReference;
   private TrapezoidProfile.State goalReference;
 
   private Pivot() {
     this.motor = new CANSparkMax(PivotConstants.kMotorPort, kBrushless);
     this.encoder = this.motor.getAbsoluteEncoder(Type.kDutyCycle);
+    this.feedbackController = this.motor.getPIDController();
     this.feedforwardController =
         new ArmFeedforward(PivotConstants.kS, PivotConstants.kG, PivotConstants.kV);
-    this.feedbackController =
-        new PIDController(PivotConstants.kP, PivotConstants.kI, PivotConstants.kD);
-    this.motionProfile = new TrapezoidProfile(Constants.PivotConstants.kProfileConstraints);
+    this.motionProfile = createProfile(PivotConstants.kProfileConstraints);
     this.previousReference = new TrapezoidProfile.State(this.getPositionDeg(), 0);
     this.goalReference = previousReference;
 
@@ -90,9 +91,30 @@ public class Pivot extends SubsystemBase {
   }
 
   private void configureController() {
-    feedbackController.enableContinuousInput(-180.0, 180.0);
-    feedbackController.setTolerance(PivotConstants.kToleranceDeg);
-    feedbackController.setSetpoint(previousReference.position);
+    // position loop runs on the spark at 1 khz against the absolute encoder
+    this.feedbackController.setFeedbackDevice(this.encoder);
+
+    this.feedbackController.setP(PivotConstants.kP);
+    this.feedbackController.setI(PivotConstants.kI);
+    this.feedbackController.setD(PivotConstants.kD);
+    this.feedbackController.setFF(0.0);
+    this.feedbackController.setOutputRange(-1.0, 1.0);
+
+    // encoder reads 0 to 360, wrap so setpoints below zero take the short way around
+    this.feedbackController.setPositionPIDWrappingEnabled(true);
+    this.feedbackController.setPositionPIDWrappingMinInput(0.0);
+    this.feedbackController.setPositionPIDWrappingMaxInput(360.0);
+  }
+
+  private static MotionProfile createProfile(Constraints constraints) {
+    return switch (PivotConstants.kProfileType) {
+      case kSCurve -> MotionProfile.sCurve(constraints, PivotConstants.kMaxJerkDeg);
+      case kExponential -> MotionProfile.exponential(
+          PivotConstants.kProfileMaxInputVolts,
+          PivotConstants.kProfileKV,
+          PivotConstants.kProfileKA);
+      default -> MotionProfile.trapezoid(constraints);
+    };
   }
 
   public double getPositionDeg() {
@@ -122,24 +144,22 @@ public class Pivot extends SubsystemBase {
   }
 
   protected void useOutput(TrapezoidProfile.State setpoint) {
-    // double feedforwardOutput =
-    //     this.feedforwardController.calculate(
-    //         setpoint.position * Math.PI / 180.0, setpoint.velocity * Math.PI / 180.0);
-
-    // SmartDashboard.putNumber("pivot position setpoint mp (deg)", setpoint.position);
-    // SmartDashboard.putNumber("pivot velocity setpoint mp (deg)", setpoint.velocity);
-
-    // SmartDashboard.putNumber("pivot ff output", feedforwardOutput);
-
-    // double feedbackOutput = feedbackController.calculate(this.getPositionDeg(), setpoint.position);
-
-    // SmartDashboard.putNumber("pivot fb output", feedbackOutput);
-
-    // double controllerOutput = feedforwardOutput + feedbackOutput;
-
-    // SmartDashboard.putNumber("pivot controller output", controllerOutput);
-
-    // this.motor.set(controllerOutput);
+    double feedforwardOutput =
+        this.feedforwardController.calculate(
+            setpoint.position * Math.PI / 180.0, setpoint.velocity * Math.PI / 180.0);
+
+    SmartDashboard.putNumber("pivot position setpoint mp (deg)", setpoint.position);
+    SmartDashboard.putNumber("pivot velocity setpoint mp (deg)", setpoint.velocity);
+
+    SmartDashboard.putNumber("pivot ff output", feedforwardOutput);
+
+    // gravity and velocity feedforward ride along with the setpoint, feedback runs on the spark
+    this.feedbackController.setReference(
+        MathUtil.inputModulus(setpoint.position, 0.0, 360.0),
+        ControlType.kPosition,
+        0,
+        feedforwardOutput,
+        ArbFFUnits.kPercentOut);
   }
 
   public void doSendables() {
@@ -149,7 +169,7 @@ public class Pivot extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void monitoredPeriodic() {
     // update assumed position with next profile timestamp
     previousReference = motionProfile.calculate(0.02, previousReference, goalReference);
 
@@ -183,7 +203,9 @@ public class Pivot extends SubsystemBase {
     double tunedI = SmartDashboard.getNumber("pivot ki", PivotConstants.kI);
     double tunedD = SmartDashboard.getNumber("pivot kd", PivotConstants.kD);
 
-    this.feedbackController.setPID(tunedP, tunedI, tunedD);
+    this.feedbackController.setP(tunedP);
+    this.feedbackController.setI(tunedI);
+    this.feedbackController.setD(tunedD);
 
     double tunedS = SmartDashboard.getNumber("pivot ks", PivotConstants.kS);
     double tunedG = SmartDashboard.getNumber("pivot kg", PivotConstants.kG);
@@ -196,7 +218,7 @@ public class Pivot extends SubsystemBase {
     double tunedMaxAcc =
         SmartDashboard.getNumber("pivot max acc (deg)", PivotConstants.kMaxAccelerationDeg);
 
-    this.motionProfile = new TrapezoidProfile(new Constraints(tunedMaxVel, tunedMaxAcc));
+    this.motionProfile = createProfile(new Constraints(tunedMaxVel, tunedMaxAcc));
 
     this.setGoal(
         MathUtil.clamp(
@@ -229,6 +251,16 @@ public class Pivot extends SubsystemBase {
     return this.moveToAngle(() -> angleDeg);
   }
 
+  /**
+   * Moves with temporary profile limits, used to keep the pivot in step with the retractor. Always
+   * a trapezoid since that is what the coordinated move timing is planned against.
+   */
+  public Command moveToAngle(double angleDeg, Constraints constraints) {
+    return this.moveToAngle(angleDeg)
+        .beforeStarting(() -> this.motionProfile = MotionProfile.trapezoid(constraints))
+        .finallyDo(() -> this.motionProfile = createProfile(PivotConstants.kProfileConstraints));
+  }
+
   public Command moveToRetracted() {
     return this.moveToAngle(PivotConstants.PivotSetpoint.kRetracted.angle);
   }
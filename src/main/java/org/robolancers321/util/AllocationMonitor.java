@@ -0,0 +1,178 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.robolancers321.Constants.DiagnosticsConstants;
+
+/**
+ * Counts the bytes the main thread allocates each loop and who allocated them, so garbage that
+ * leads to gc pauses and loop overruns can be traced to a subsystem periodic or a command. Counters
+ * are created once at boot and measure between start and stop, and commands are charged whatever
+ * was allocated since the last measurement ended when the scheduler reports they executed. Turned
+ * on and off from the dashboard, and costs one field read per counter while off.
+ */
+public final class AllocationMonitor {
+  /** Bytes allocated between start and stop, summed over a loop. */
+  public static final class Counter {
+    private final String lastKey;
+    private final String maxKey;
+
+    private long startBytes;
+    private long loopBytes;
+    private long lastBytes;
+    private long maxBytes;
+
+    private Counter(String name) {
+      this.lastKey = "alloc " + name + " (B)";
+      this.maxKey = "alloc " + name + " max (B)";
+    }
+
+    public void start() {
+      if (!enabled) return;
+
+      this.startBytes = allocatedBytes();
+    }
+
+    public void stop() {
+      if (!enabled) return;
+
+      long now = allocatedBytes();
+
+      this.loopBytes += now - this.startBytes;
+
+      lastMarkBytes = now;
+    }
+
+    private void charge(long now) {
+      this.loopBytes += now - lastMarkBytes;
+
+      lastMarkBytes = now;
+    }
+
+    private void endLoop() {
+      this.lastBytes = this.loopBytes;
+      this.maxBytes = Math.max(this.maxBytes, this.loopBytes);
+      this.loopBytes = 0;
+    }
+
+    private void reset() {
+      this.loopBytes = 0;
+      this.lastBytes = 0;
+      this.maxBytes = 0;
+    }
+
+    private void publish() {
+      SmartDashboard.putNumber(this.lastKey, this.lastBytes);
+      SmartDashboard.putNumber(this.maxKey, this.maxBytes);
+    }
+  }
+
+  private static final String kEnabledKey = "allocation accounting";
+
+  private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+
+  private static final Map<String, Counter> counters = new HashMap<>();
+  private static final List<Counter> counterList = new ArrayList<>();
+  // by name, commands built fresh each time they are bound or deferred would otherwise pile up
+  private static final Map<String, Counter> commandCounters = new HashMap<>();
+
+  private static final Counter loop = new Counter("loop");
+
+  private static boolean enabled = false;
+  private static long lastMarkBytes;
+  private static int loopsSincePublish = 0;
+
+  private AllocationMonitor() {}
+
+  private static com.sun.management.ThreadMXBean getThreadBean() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+        && bean.isThreadAllocatedMemorySupported()) {
+      bean.setThreadAllocatedMemoryEnabled(true);
+
+      return bean;
+    }
+
+    DriverStation.reportWarning("Allocation accounting is not supported by this JVM", false);
+
+    return null;
+  }
+
+  private static long allocatedBytes() {
+    return threadBean.getCurrentThreadAllocatedBytes();
+  }
+
+  /** The counter for a name, shared by everything that asks for the same name. */
+  public static Counter counter(String name) {
+    return counters.computeIfAbsent(
+        name,
+        key -> {
+          Counter counter = new Counter(key);
+
+          counterList.add(counter);
+
+          return counter;
+        });
+  }
+
+  /** Charges each executing command with what was allocated since the last measurement ended. */
+  public static void install() {
+    SmartDashboard.putBoolean(
+        kEnabledKey,
+        SmartDashboard.getBoolean(kEnabledKey, DiagnosticsConstants.kAllocationAccounting));
+
+    CommandScheduler.getInstance()
+        .onCommandExecute(
+            command -> {
+              if (!enabled) return;
+
+              commandCounters
+                  .computeIfAbsent(command.getName(), name -> counter("command " + name))
+                  .charge(allocatedBytes());
+            });
+  }
+
+  /** Call first thing in robotPeriodic. */
+  public static void beginLoop() {
+    boolean wasEnabled = enabled;
+
+    enabled =
+        threadBean != null
+            && SmartDashboard.getBoolean(kEnabledKey, DiagnosticsConstants.kAllocationAccounting);
+
+    if (!enabled) return;
+
+    if (!wasEnabled) {
+      loop.reset();
+      for (int i = 0; i < counterList.size(); i++) counterList.get(i).reset();
+    }
+
+    loop.start();
+
+    lastMarkBytes = loop.startBytes;
+  }
+
+  /** Call last thing in robotPeriodic, publishes every few loops to keep the dashboard cheap. */
+  public static void endLoop() {
+    if (!enabled) return;
+
+    loop.stop();
+
+    // indexed loops so the accounting itself doesn't allocate an iterator
+    loop.endLoop();
+    for (int i = 0; i < counterList.size(); i++) counterList.get(i).endLoop();
+
+    if (++loopsSincePublish < DiagnosticsConstants.kAllocationPublishPeriodLoops) return;
+
+    loopsSincePublish = 0;
+
+    loop.publish();
+    for (int i = 0; i < counterList.size(); i++) counterList.get(i).publish();
+  }
+}
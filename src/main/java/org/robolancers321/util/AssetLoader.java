@@ -0,0 +1,150 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses deploy files on a small pool of background threads so they load in parallel with each
+ * other and with the rest of robotInit. Each load hands back an asset that only blocks the caller
+ * the first time it is read and the file is not finished yet. How long each file took to parse and
+ * how long anything waited on it are both recorded for the boot report.
+ */
+public class AssetLoader {
+  /** A deploy file being parsed in the background. */
+  public static class Asset<T> {
+    private final String name;
+    private final Future<T> future;
+
+    private volatile double loadMs = Double.NaN;
+    private volatile double waitMs = 0.0;
+
+    private Asset(String name, Callable<T> loader) {
+      this.name = name;
+
+      this.future =
+          executor.submit(
+              () -> {
+                long start = System.nanoTime();
+
+                try {
+                  return loader.call();
+                } finally {
+                  long end = System.nanoTime();
+
+                  this.loadMs = (end - start) * 1e-6;
+
+                  BootProfiler.record("load " + name, start, end);
+                }
+              });
+    }
+
+    public String getName() {
+      return this.name;
+    }
+
+    public boolean isLoaded() {
+      return this.future.isDone();
+    }
+
+    /** Blocks until the asset is parsed, rethrowing whatever the loader threw. */
+    public T get() throws IOException {
+      if (this.future.isDone()) return this.unwrap();
+
+      long start = System.nanoTime();
+
+      try {
+        return this.unwrap();
+      } finally {
+        long end = System.nanoTime();
+
+        this.waitMs += (end - start) * 1e-6;
+
+        BootProfiler.record("wait " + this.name, start, end);
+      }
+    }
+
+    /** Same as get, for callers that can't recover from a missing file anyway. */
+    public T join() {
+      try {
+        return this.get();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private T unwrap() throws IOException {
+      try {
+        return this.future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+
+        throw new IOException("Interrupted while loading " + this.name, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+
+        if (cause instanceof IOException ioException) throw ioException;
+        if (cause instanceof UncheckedIOException uncheckedIOException)
+          throw uncheckedIOException.getCause();
+        if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+
+        throw new IOException("Could not load " + this.name, cause);
+      }
+    }
+  }
+
+  // the rio only has two cores, more threads than that would just fight the main thread
+  private static final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          Math.min(2, Runtime.getRuntime().availableProcessors()),
+          runnable -> {
+            Thread thread = new Thread(runnable, "Asset Loader");
+            thread.setDaemon(true);
+
+            return thread;
+          });
+
+  private static final List<Asset<?>> assets = new ArrayList<>();
+
+  /** Starts parsing an asset in the background right away. */
+  public static synchronized <T> Asset<T> load(String name, Callable<T> loader) {
+    Asset<T> asset = new Asset<>(name, loader);
+
+    assets.add(asset);
+
+    return asset;
+  }
+
+  /** Publishes and prints how long each asset took to parse and how long the robot waited on it. */
+  public static synchronized void report() {
+    double totalLoadMs = 0.0;
+    double totalWaitMs = 0.0;
+
+    System.out.printf("%-40s %10s %10s%n", "asset", "load (ms)", "wait (ms)");
+
+    for (Asset<?> asset : assets) {
+      String status = asset.isLoaded() ? String.format("%10.1f", asset.loadMs) : "   pending";
+
+      System.out.printf("%-40s %s %10.1f%n", asset.name, status, asset.waitMs);
+
+      SmartDashboard.putNumber("asset " + asset.name + " load (ms)", asset.loadMs);
+      SmartDashboard.putNumber("asset " + asset.name + " wait (ms)", asset.waitMs);
+
+      if (asset.isLoaded()) totalLoadMs += asset.loadMs;
+      totalWaitMs += asset.waitMs;
+    }
+
+    System.out.printf("%-40s %10.1f %10.1f%n", "total", totalLoadMs, totalWaitMs);
+
+    SmartDashboard.putNumber("asset total load (ms)", totalLoadMs);
+    SmartDashboard.putNumber("asset total wait (ms)", totalWaitMs);
+  }
+}
@@ -0,0 +1,89 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pathplanner.lib.commands.PathPlannerAuto;
+import com.pathplanner.lib.path.PathPlannerPath;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.robolancers321.subsystems.drivetrain.FlowField;
+import org.robolancers321.util.AssetLoader.Asset;
+import swervelib.parser.SwerveParser;
+
+/**
+ * Every file the robot reads from the deploy directory. The fixed assets start parsing as soon as
+ * this class is touched, and preload starts every PathPlanner path and auto, so call it first thing
+ * in robotInit and let the subsystems block on whatever they need once they get to it.
+ */
+public final class Assets {
+  private static final File deployDirectory = Filesystem.getDeployDirectory();
+
+  public static final Asset<AprilTagFieldLayout> aprilTagLayout =
+      AssetLoader.load("apriltag layout", AprilTagFields.k2024Crescendo::loadAprilTagLayoutField);
+
+  public static final Asset<SwerveParser> swerveParser =
+      AssetLoader.load(
+          "swerve config", () -> new SwerveParser(new File(deployDirectory, "swerve")));
+
+  public static final Asset<FlowField> navGrid =
+      AssetLoader.load(
+          "navgrid",
+          () -> FlowField.fromNavGrid(new File(deployDirectory, "pathplanner/navgrid.json")));
+
+  public static final Asset<JsonNode> cameraConfig =
+      AssetLoader.load(
+          "camera config",
+          () -> new ObjectMapper().readTree(new File(deployDirectory, "vision/cameras.json")));
+
+  private static final Map<String, Asset<PathPlannerPath>> paths = new ConcurrentHashMap<>();
+  private static final Map<String, Asset<List<PathPlannerPath>>> autoPathGroups =
+      new ConcurrentHashMap<>();
+
+  private Assets() {}
+
+  private static String[] listNames(String directory, String extension) {
+    String[] files =
+        new File(deployDirectory, directory).list((dir, name) -> name.endsWith(extension));
+
+    if (files == null) return new String[0];
+
+    for (int i = 0; i < files.length; i++)
+      files[i] = files[i].substring(0, files[i].length() - extension.length());
+
+    return files;
+  }
+
+  /** Starts parsing every PathPlanner path and auto in the background. */
+  public static void preload() {
+    for (String name : listNames("pathplanner/paths", ".path")) getPathAsset(name);
+    for (String name : listNames("pathplanner/autos", ".auto")) getAutoPathGroupAsset(name);
+  }
+
+  private static Asset<PathPlannerPath> getPathAsset(String name) {
+    return paths.computeIfAbsent(
+        name, key -> AssetLoader.load("path " + key, () -> PathPlannerPath.fromPathFile(key)));
+  }
+
+  private static Asset<List<PathPlannerPath>> getAutoPathGroupAsset(String name) {
+    return autoPathGroups.computeIfAbsent(
+        name,
+        key ->
+            AssetLoader.load("auto " + key, () -> PathPlannerAuto.getPathGroupFromAutoFile(key)));
+  }
+
+  /** A PathPlanner path by file name, loading it now if it was not preloaded. */
+  public static PathPlannerPath getPath(String name) {
+    return getPathAsset(name).join();
+  }
+
+  /** The paths in a PathPlanner auto by file name, loading it now if it was not preloaded. */
+  public static List<PathPlannerPath> getAutoPathGroup(String name) {
+    return getAutoPathGroupAsset(name).join();
+  }
+}
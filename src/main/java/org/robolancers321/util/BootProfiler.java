@@ -0,0 +1,197 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Nested timing spans for everything robotInit does, so a slow boot can be traced to the
+ * constructor or config step responsible. Spans on the main thread nest by call depth, and work
+ * done on other threads, like background asset loads, is recorded on its own track. finish writes
+ * a Chrome trace that opens in chrome://tracing or ui.perfetto.dev and prints a summary table, and
+ * anything timed after that is not recorded.
+ */
+public class BootProfiler {
+  /** An open span, closed by try with resources. */
+  public static class Span implements AutoCloseable {
+    private final String name;
+    private final long startNanos;
+    private final int depth;
+
+    private Span(String name, long startNanos, int depth) {
+      this.name = name;
+      this.startNanos = startNanos;
+      this.depth = depth;
+    }
+
+    @Override
+    public void close() {
+      if (this == noop) return;
+
+      openDepth.set(this.depth);
+
+      add(this.name, this.startNanos, System.nanoTime(), this.depth);
+    }
+  }
+
+  private record Event(
+      String name, long threadId, String threadName, long startNanos, long endNanos, int depth) {}
+
+  private static final Span noop = new Span("", 0, 0);
+
+  private static final long originNanos = System.nanoTime();
+
+  private static final List<Event> events = new ArrayList<>();
+  private static final ThreadLocal<Integer> openDepth = ThreadLocal.withInitial(() -> 0);
+
+  private static volatile boolean recording = true;
+
+  private static synchronized void add(String name, long startNanos, long endNanos, int depth) {
+    if (!recording) return;
+
+    Thread thread = Thread.currentThread();
+
+    events.add(new Event(name, thread.getId(), thread.getName(), startNanos, endNanos, depth));
+  }
+
+  /** Opens a span nested under whatever span is open on this thread. */
+  public static Span span(String name) {
+    if (!recording) return noop;
+
+    int spanDepth = openDepth.get();
+
+    openDepth.set(spanDepth + 1);
+
+    return new Span(name, System.nanoTime(), spanDepth);
+  }
+
+  public static <T> T time(String name, Supplier<T> supplier) {
+    try (Span span = span(name)) {
+      return supplier.get();
+    }
+  }
+
+  public static void run(String name, Runnable runnable) {
+    try (Span span = span(name)) {
+      runnable.run();
+    }
+  }
+
+  /** Records work that was timed elsewhere, on the calling thread's track. */
+  public static void record(String name, long startNanos, long endNanos) {
+    add(name, startNanos, endNanos, openDepth.get());
+  }
+
+  /** Stops recording, then writes the trace and prints the summary. */
+  public static void finish() {
+    List<Event> finished;
+
+    synchronized (BootProfiler.class) {
+      if (!recording) return;
+
+      recording = false;
+      finished = new ArrayList<>(events);
+    }
+
+    finished.sort(Comparator.comparingLong(Event::startNanos).thenComparingInt(Event::depth));
+
+    printSummary(finished);
+    writeTrace(finished, new File(Filesystem.getOperatingDirectory(), "boot-trace.json"));
+  }
+
+  private static double millis(long nanos) {
+    return nanos * 1e-6;
+  }
+
+  // time not covered by a span one level deeper on the same thread
+  private static long selfNanos(List<Event> sorted, int index) {
+    Event event = sorted.get(index);
+
+    long self = event.endNanos() - event.startNanos();
+
+    for (int i = index + 1; i < sorted.size(); i++) {
+      Event child = sorted.get(i);
+
+      if (child.startNanos() >= event.endNanos()) break;
+
+      if (child.threadId() == event.threadId() && child.depth() == event.depth() + 1)
+        self -= child.endNanos() - child.startNanos();
+    }
+
+    return self;
+  }
+
+  private static void printSummary(List<Event> sorted) {
+    System.out.printf(
+        "%-48s %-16s %10s %10s %10s%n", "span", "thread", "start (ms)", "total (ms)", "self (ms)");
+
+    for (int i = 0; i < sorted.size(); i++) {
+      Event event = sorted.get(i);
+
+      System.out.printf(
+          "%-48s %-16.16s %10.1f %10.1f %10.1f%n",
+          "  ".repeat(event.depth()) + event.name(),
+          event.threadName(),
+          millis(event.startNanos() - originNanos),
+          millis(event.endNanos() - event.startNanos()),
+          millis(selfNanos(sorted, i)));
+    }
+
+    System.out.printf(
+        "robot code ready %.1f ms after the jvm started%n",
+        (double) ManagementFactory.getRuntimeMXBean().getUptime());
+  }
+
+  private static void writeTrace(List<Event> sorted, File file) {
+    ObjectMapper mapper = new ObjectMapper();
+    ArrayNode traceEvents = mapper.createArrayNode();
+
+    for (Event event : sorted) {
+      ObjectNode traceEvent = traceEvents.addObject();
+
+      // complete events, timestamps in microseconds
+      traceEvent.put("name", event.name());
+      traceEvent.put("ph", "X");
+      traceEvent.put("pid", 0);
+      traceEvent.put("tid", event.threadId());
+      traceEvent.put("ts", (event.startNanos() - originNanos) / 1000);
+      traceEvent.put("dur", (event.endNanos() - event.startNanos()) / 1000);
+    }
+
+    // name each thread's track
+    Set<Long> namedThreads = new HashSet<>();
+
+    for (Event event : sorted) {
+      if (!namedThreads.add(event.threadId())) continue;
+
+      ObjectNode metadata = traceEvents.addObject();
+
+      metadata.put("name", "thread_name");
+      metadata.put("ph", "M");
+      metadata.put("pid", 0);
+      metadata.put("tid", event.threadId());
+      metadata.putObject("args").put("name", event.threadName());
+    }
+
+    ObjectNode root = mapper.createObjectNode();
+    root.set("traceEvents", traceEvents);
+
+    try {
+      mapper.writeValue(file, root);
+    } catch (IOException e) {
+      DriverStation.reportWarning("Could not write boot trace: " + e.getMessage(), false);
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.ConditionalCommand;
+import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
+import edu.wpi.first.wpilibj2.command.ParallelRaceGroup;
+import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.robolancers321.Constants.DiagnosticsConstants;
+
+/**
+ * Records when every command starts, finishes or is interrupted, including the commands inside
+ * groups, so a trace shows where autos and macros sit waiting. The scheduler only reports top level
+ * commands, so the children of sequential, parallel, deadline, race and conditional groups are
+ * found by reading the groups' fields once and polled every loop, which times them to the loop.
+ * Events go into a fixed size ring buffer, and writeTrace turns whatever it holds into a Chrome
+ * trace with a track per command, nested under the command that was scheduled.
+ */
+public final class CommandTimeline {
+  private enum Kind {
+    kLeaf,
+    kSequence,
+    kParallel,
+    kRace,
+    kConditional,
+    kWrapper,
+  }
+
+  private static final class Node {
+    private final int id;
+    private final Command command;
+    private final Node root;
+    private final int depth;
+    private final String name;
+    private final String requirements;
+
+    private Kind kind = Kind.kLeaf;
+    private Field state;
+    private Node[] children = new Node[0];
+
+    private boolean running = false;
+
+    private Node(int id, Command command, Node parent) {
+      this.id = id;
+      this.command = command;
+      this.root = parent == null ? this : parent.root;
+      this.depth = parent == null ? 0 : parent.depth + 1;
+      this.name = command.getName();
+
+      String[] names =
+          command.getRequirements().stream()
+              .map(Subsystem::getName)
+              .sorted()
+              .toArray(String[]::new);
+
+      this.requirements = String.join(", ", names);
+    }
+  }
+
+  private static final byte kInitialize = 0;
+  private static final byte kFinish = 1;
+  private static final byte kInterrupt = 2;
+
+  private static final Field sequenceCommands = field(SequentialCommandGroup.class, "m_commands");
+  private static final Field sequenceIndex =
+      field(SequentialCommandGroup.class, "m_currentCommandIndex");
+  private static final Field parallelCommands = field(ParallelCommandGroup.class, "m_commands");
+  private static final Field deadlineCommands = field(ParallelDeadlineGroup.class, "m_commands");
+  private static final Field deadline = field(ParallelDeadlineGroup.class, "m_deadline");
+  private static final Field raceCommands = field(ParallelRaceGroup.class, "m_commands");
+  private static final Field raceFinished = field(ParallelRaceGroup.class, "m_finished");
+  private static final Field onTrue = field(ConditionalCommand.class, "m_onTrue");
+  private static final Field onFalse = field(ConditionalCommand.class, "m_onFalse");
+  private static final Field selected = field(ConditionalCommand.class, "m_selectedCommand");
+  private static final Field wrapped = field(WrapperCommand.class, "m_command");
+
+  private static final Map<Command, Node> nodes = new IdentityHashMap<>();
+  private static final List<Node> nodeList = new ArrayList<>();
+  private static final List<Node> activeRoots = new ArrayList<>();
+
+  // ring buffer of events, allocated once so recording never makes garbage
+  private static final int capacity = DiagnosticsConstants.kCommandTimelineCapacity;
+  private static final long[] eventMicros = new long[capacity];
+  private static final int[] eventNodes = new int[capacity];
+  private static final byte[] eventTypes = new byte[capacity];
+  private static int nextEvent = 0;
+  private static int eventCount = 0;
+
+  private CommandTimeline() {}
+
+  private static Field field(Class<?> type, String name) {
+    try {
+      Field field = type.getDeclaredField(name);
+      field.setAccessible(true);
+
+      return field;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      DriverStation.reportWarning(
+          "Command timeline can't see inside " + type.getSimpleName() + ": " + e, false);
+
+      return null;
+    }
+  }
+
+  private static Object read(Field field, Command command) {
+    if (field == null) return null;
+
+    try {
+      return field.get(command);
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  public static void install() {
+    CommandScheduler.getInstance().onCommandInitialize(CommandTimeline::onInitialize);
+    CommandScheduler.getInstance()
+        .onCommandFinish(command -> onEnd(command, kFinish, RobotController.getFPGATime()));
+    CommandScheduler.getInstance()
+        .onCommandInterrupt(command -> onEnd(command, kInterrupt, RobotController.getFPGATime()));
+  }
+
+  private static Node build(Command command, Node parent) {
+    Node node = new Node(nodeList.size(), command, parent);
+
+    nodes.put(command, node);
+    nodeList.add(node);
+
+    List<Command> children = new ArrayList<>();
+
+    if (command instanceof SequentialCommandGroup && sequenceIndex != null) {
+      if (read(sequenceCommands, command) instanceof List<?> list) addCommands(children, list);
+
+      node.kind = Kind.kSequence;
+      node.state = sequenceIndex;
+    } else if (command instanceof ParallelCommandGroup && parallelCommands != null) {
+      if (read(parallelCommands, command) instanceof Map<?, ?> map)
+        addCommands(children, map.keySet());
+
+      node.kind = Kind.kParallel;
+      node.state = parallelCommands;
+    } else if (command instanceof ParallelDeadlineGroup && deadlineCommands != null) {
+      // deadline first so its track sits right under the group
+      if (read(deadline, command) instanceof Command deadlineCommand) children.add(deadlineCommand);
+
+      if (read(deadlineCommands, command) instanceof Map<?, ?> map)
+        for (Object child : map.keySet())
+          if (child instanceof Command childCommand && !children.contains(childCommand))
+            children.add(childCommand);
+
+      node.kind = Kind.kParallel;
+      node.state = deadlineCommands;
+    } else if (command instanceof ParallelRaceGroup && raceFinished != null) {
+      if (read(raceCommands, command) instanceof Set<?> set) addCommands(children, set);
+
+      node.kind = Kind.kRace;
+      node.state = raceFinished;
+    } else if (command instanceof ConditionalCommand && selected != null) {
+      if (read(onTrue, command) instanceof Command onTrueCommand) children.add(onTrueCommand);
+      if (read(onFalse, command) instanceof Command onFalseCommand) children.add(onFalseCommand);
+
+      node.kind = Kind.kConditional;
+      node.state = selected;
+    } else if (command instanceof WrapperCommand) {
+      if (read(wrapped, command) instanceof Command wrappedCommand) children.add(wrappedCommand);
+
+      node.kind = Kind.kWrapper;
+    }
+
+    if (children.isEmpty()) node.kind = Kind.kLeaf;
+
+    node.children = new Node[children.size()];
+
+    for (int i = 0; i < node.children.length; i++)
+      node.children[i] = build(children.get(i), node);
+
+    return node;
+  }
+
+  private static void addCommands(List<Command> out, Collection<?> commands) {
+    for (Object command : commands) if (command instanceof Command child) out.add(child);
+  }
+
+  private static boolean childRunning(Node node, int index) {
+    try {
+      switch (node.kind) {
+        case kSequence:
+          return node.state.getInt(node.command) == index;
+        case kParallel:
+          return node.state.get(node.command) instanceof Map<?, ?> map
+              && Boolean.TRUE.equals(map.get(node.children[index].command));
+        case kRace:
+          return !node.state.getBoolean(node.command);
+        case kConditional:
+          return node.state.get(node.command) == node.children[index].command;
+        default:
+          return true;
+      }
+    } catch (IllegalAccessException e) {
+      return false;
+    }
+  }
+
+  private static void record(Node node, byte type, long micros) {
+    eventMicros[nextEvent] = micros;
+    eventNodes[nextEvent] = node.id;
+    eventTypes[nextEvent] = type;
+
+    nextEvent = (nextEvent + 1) % capacity;
+    eventCount = Math.min(eventCount + 1, capacity);
+  }
+
+  private static void poll(Node node, long micros) {
+    for (int i = 0; i < node.children.length; i++) {
+      Node child = node.children[i];
+
+      boolean running = node.running && childRunning(node, i);
+
+      if (running != child.running) {
+        child.running = running;
+
+        record(child, running ? kInitialize : kFinish, micros);
+      }
+
+      poll(child, micros);
+    }
+  }
+
+  private static void close(Node node, byte type, long micros) {
+    if (node.running) {
+      node.running = false;
+
+      record(node, type, micros);
+    }
+
+    for (int i = 0; i < node.children.length; i++) close(node.children[i], type, micros);
+  }
+
+  private static void onInitialize(Command command) {
+    long micros = RobotController.getFPGATime();
+
+    Node node = nodes.get(command);
+
+    // composed commands can't be scheduled on their own, so anything new here is a root
+    if (node == null) node = build(command, null);
+
+    node.running = true;
+    record(node, kInitialize, micros);
+
+    if (!activeRoots.contains(node)) activeRoots.add(node);
+
+    poll(node, micros);
+  }
+
+  private static void onEnd(Command command, byte type, long micros) {
+    Node node = nodes.get(command);
+
+    if (node == null) return;
+
+    close(node, type, micros);
+
+    activeRoots.remove(node);
+  }
+
+  /** Call after the scheduler runs to catch commands starting and ending inside groups. */
+  public static void update() {
+    long micros = RobotController.getFPGATime();
+
+    for (int i = 0; i < activeRoots.size(); i++) poll(activeRoots.get(i), micros);
+  }
+
+  /** Writes every buffered command as a Chrome trace, still running ones end now. */
+  public static void writeTrace() {
+    writeTrace(new File(Filesystem.getOperatingDirectory(), "command-trace.json"));
+  }
+
+  private static void writeTrace(File file) {
+    long now = RobotController.getFPGATime();
+
+    ObjectMapper mapper = new ObjectMapper();
+    ArrayNode traceEvents = mapper.createArrayNode();
+
+    long[] startMicros = new long[nodeList.size()];
+    Arrays.fill(startMicros, -1);
+
+    boolean[] seen = new boolean[nodeList.size()];
+
+    int first = (nextEvent - eventCount + capacity) % capacity;
+
+    for (int i = 0; i < eventCount; i++) {
+      int index = (first + i) % capacity;
+
+      Node node = nodeList.get(eventNodes[index]);
+
+      if (eventTypes[index] == kInitialize) {
+        startMicros[node.id] = eventMicros[index];
+
+        continue;
+      }
+
+      // its start fell out of the buffer
+      if (startMicros[node.id] < 0) continue;
+
+      addSlice(
+          traceEvents,
+          node,
+          startMicros[node.id],
+          eventMicros[index],
+          eventTypes[index] == kInterrupt ? "interrupted" : "finished");
+
+      startMicros[node.id] = -1;
+      seen[node.id] = true;
+    }
+
+    for (Node node : nodeList) {
+      if (startMicros[node.id] < 0) continue;
+
+      addSlice(traceEvents, node, startMicros[node.id], now, "running");
+      seen[node.id] = true;
+    }
+
+    // a process per scheduled command and a track per command inside it, in tree order
+    for (Node node : nodeList) {
+      if (!seen[node.id]) continue;
+
+      if (node.root == node) {
+        addMetadata(traceEvents, node, "process_name").put("name", node.name);
+        addMetadata(traceEvents, node, "process_sort_index").put("sort_index", node.id);
+      }
+
+      addMetadata(traceEvents, node, "thread_name")
+          .put("name", "  ".repeat(node.depth) + node.name);
+      addMetadata(traceEvents, node, "thread_sort_index").put("sort_index", node.id);
+    }
+
+    ObjectNode root = mapper.createObjectNode();
+    root.set("traceEvents", traceEvents);
+
+    try {
+      mapper.writeValue(file, root);
+    } catch (IOException e) {
+      DriverStation.reportWarning("Could not write command trace: " + e.getMessage(), false);
+    }
+  }
+
+  private static void addSlice(
+      ArrayNode traceEvents, Node node, long startMicros, long endMicros, String end) {
+    ObjectNode traceEvent = traceEvents.addObject();
+
+    // complete events, timestamps in microseconds of fpga time
+    traceEvent.put("name", node.name);
+    traceEvent.put("ph", "X");
+    traceEvent.put("pid", node.root.id);
+    traceEvent.put("tid", node.id);
+    traceEvent.put("ts", startMicros);
+    traceEvent.put("dur", endMicros - startMicros);
+
+    ObjectNode args = traceEvent.putObject("args");
+
+    args.put("requirements", node.requirements);
+    args.put("end", end);
+  }
+
+  // returns the args for the caller to fill in
+  private static ObjectNode addMetadata(ArrayNode traceEvents, Node node, String name) {
+    ObjectNode metadata = traceEvents.addObject();
+
+    metadata.put("name", name);
+    metadata.put("ph", "M");
+    metadata.put("pid", node.root.id);
+    metadata.put("tid", node.id);
+
+    return metadata.putObject("args");
+  }
+}
@@ -0,0 +1,169 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Every Crescendo landmark the robot cares about, in primitive arrays for both alliances. Both
+ * alliances are built once at startup and the active one is swapped in when the alliance changes,
+ * so lookups and nearest-target queries never allocate. Coordinates are field meters, headings are
+ * radians, and red is blue mirrored across the center line.
+ */
+public class FieldLayout {
+  /*
+   * Singleton
+   */
+
+  private static FieldLayout instance = null;
+
+  public static FieldLayout getInstance() {
+    if (instance == null) instance = BootProfiler.time("FieldLayout", FieldLayout::new);
+
+    return instance;
+  }
+
+  /*
+   * Implementation
+   */
+
+  public static final double kFieldLengthMeters = 16.54;
+  public static final double kFieldWidthMeters = 8.21;
+  public static final double kSubwooferDepthMeters = 0.917; // speaker wall to the subwoofer face
+
+  public enum Landmark {
+    kSpeaker,
+    kAmp,
+    kSource,
+    kTrap,
+    kStageLeg,
+    kNote
+  }
+
+  // blue alliance {x, y, heading deg}, headings face out of the landmark toward the field
+  private static final double[][][] kBlueLandmarks = {
+    {{0.0, 5.55, 0.0}}, // speaker opening
+    {{1.84, 8.21, -90.0}}, // amp opening
+    {{15.68, 0.55, 120.0}}, // source slot
+    {{3.835, 2.29, -120.0}, {3.835, 5.91, 120.0}, {6.97, 4.1, 0.0}}, // trap scoring poses
+    {{3.38, 4.10, 0.0}, {5.84, 5.52, 0.0}, {5.84, 2.69, 0.0}}, // stage legs
+    {
+      {2.90, 7.00, 0.0}, // wing notes, amp side first
+      {2.90, 5.55, 0.0},
+      {2.90, 4.10, 0.0},
+      {8.27, 7.45, 0.0}, // center line notes, amp side first
+      {8.27, 5.78, 0.0},
+      {8.27, 4.10, 0.0},
+      {8.27, 2.44, 0.0},
+      {8.27, 0.77, 0.0}
+    }
+  };
+
+  private static final int kBlue = 0;
+  private static final int kRed = 1;
+
+  // [alliance][landmark][index]
+  private final double[][][] x = new double[2][][];
+  private final double[][][] y = new double[2][][];
+  private final double[][][] heading = new double[2][][];
+  private final Pose2d[][][] poses = new Pose2d[2][][];
+
+  private int alliance = kBlue;
+
+  private FieldLayout() {
+    this.build(kBlue, false);
+    this.build(kRed, true);
+
+    MyAlliance.addListener(isRed -> this.alliance = isRed ? kRed : kBlue);
+  }
+
+  private void build(int alliance, boolean mirror) {
+    int landmarkCount = Landmark.values().length;
+
+    this.x[alliance] = new double[landmarkCount][];
+    this.y[alliance] = new double[landmarkCount][];
+    this.heading[alliance] = new double[landmarkCount][];
+    this.poses[alliance] = new Pose2d[landmarkCount][];
+
+    for (int landmark = 0; landmark < landmarkCount; landmark++) {
+      double[][] points = kBlueLandmarks[landmark];
+
+      this.x[alliance][landmark] = new double[points.length];
+      this.y[alliance][landmark] = new double[points.length];
+      this.heading[alliance][landmark] = new double[points.length];
+      this.poses[alliance][landmark] = new Pose2d[points.length];
+
+      for (int i = 0; i < points.length; i++) {
+        double pointX = mirror ? kFieldLengthMeters - points[i][0] : points[i][0];
+        double pointHeading = Math.toRadians(mirror ? 180.0 - points[i][2] : points[i][2]);
+
+        this.x[alliance][landmark][i] = pointX;
+        this.y[alliance][landmark][i] = points[i][1];
+        this.heading[alliance][landmark][i] = pointHeading;
+        this.poses[alliance][landmark][i] =
+            new Pose2d(new Translation2d(pointX, points[i][1]), new Rotation2d(pointHeading));
+      }
+    }
+  }
+
+  public int count(Landmark landmark) {
+    return this.x[this.alliance][landmark.ordinal()].length;
+  }
+
+  public double getX(Landmark landmark, int index) {
+    return this.x[this.alliance][landmark.ordinal()][index];
+  }
+
+  public double getY(Landmark landmark, int index) {
+    return this.y[this.alliance][landmark.ordinal()][index];
+  }
+
+  public double getHeadingRad(Landmark landmark, int index) {
+    return this.heading[this.alliance][landmark.ordinal()][index];
+  }
+
+  /** Cached pose of a landmark, shared between callers so do not hold onto it across alliances. */
+  public Pose2d getPose(Landmark landmark, int index) {
+    return this.poses[this.alliance][landmark.ordinal()][index];
+  }
+
+  /** Cached blue alliance pose of a landmark, for planners that mirror for red themselves. */
+  public Pose2d getBluePose(Landmark landmark, int index) {
+    return this.poses[kBlue][landmark.ordinal()][index];
+  }
+
+  public Translation2d getSpeakerPosition() {
+    return this.getPose(Landmark.kSpeaker, 0).getTranslation();
+  }
+
+  public double distanceTo(Landmark landmark, int index, double fromX, double fromY) {
+    return Math.hypot(this.getX(landmark, index) - fromX, this.getY(landmark, index) - fromY);
+  }
+
+  /** Index of the closest landmark of a kind, a fixed handful of comparisons. */
+  public int nearest(Landmark landmark, double fromX, double fromY) {
+    double[] xs = this.x[this.alliance][landmark.ordinal()];
+    double[] ys = this.y[this.alliance][landmark.ordinal()];
+
+    int best = 0;
+    double bestDistanceSquared = Double.POSITIVE_INFINITY;
+
+    for (int i = 0; i < xs.length; i++) {
+      double dx = xs[i] - fromX;
+      double dy = ys[i] - fromY;
+      double distanceSquared = dx * dx + dy * dy;
+
+      if (distanceSquared < bestDistanceSquared) {
+        best = i;
+        bestDistanceSquared = distanceSquared;
+      }
+    }
+
+    return best;
+  }
+
+  public double distanceToNearest(Landmark landmark, double fromX, double fromY) {
+    return this.distanceTo(landmark, this.nearest(landmark, fromX, fromY), fromX, fromY);
+  }
+}
@@ -0,0 +1,22 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/** A subsystem whose periodic callback is charged to its own allocation counter. */
+public abstract class MonitoredSubsystem extends SubsystemBase {
+  // instances of the same class share a counter, same as virtual subsystems
+  private final AllocationMonitor.Counter periodicAllocations =
+      AllocationMonitor.counter(this.getClass().getSimpleName() + " periodic");
+
+  /** Measures {@link #monitoredPeriodic()}, so subclasses can return early freely. */
+  @Override
+  public final void periodic() {
+    this.periodicAllocations.start();
+    this.monitoredPeriodic();
+    this.periodicAllocations.stop();
+  }
+
+  /** This method is called periodically by the scheduler once per loop cycle. */
+  protected void monitoredPeriodic() {}
+}
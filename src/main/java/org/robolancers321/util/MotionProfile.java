@@ -0,0 +1,51 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.math.trajectory.ExponentialProfile;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+
+/**
+ * One step of a motion profile, shaped like {@link TrapezoidProfile#calculate} so the arms can swap
+ * profile types without touching their control loops.
+ */
+@FunctionalInterface
+public interface MotionProfile {
+  enum Type {
+    kTrapezoid,
+    kSCurve,
+    kExponential
+  }
+
+  TrapezoidProfile.State calculate(
+      double dt, TrapezoidProfile.State current, TrapezoidProfile.State goal);
+
+  static MotionProfile trapezoid(Constraints constraints) {
+    return new TrapezoidProfile(constraints)::calculate;
+  }
+
+  static MotionProfile sCurve(Constraints constraints, double maxJerk) {
+    return new SCurveProfile(constraints.maxVelocity, constraints.maxAcceleration, maxJerk);
+  }
+
+  /**
+   * Profile that follows the motor's own voltage limited response, so it accelerates hard from rest
+   * and tapers off as back emf builds instead of asking for the same acceleration at every speed.
+   * kV and kA are in volts per unit of velocity and acceleration of the profiled position.
+   */
+  static MotionProfile exponential(double maxInputVolts, double kV, double kA) {
+    ExponentialProfile profile =
+        new ExponentialProfile(
+            ExponentialProfile.Constraints.fromCharacteristics(maxInputVolts, kV, kA));
+
+    return (dt, current, goal) -> {
+      ExponentialProfile.State next =
+          profile.calculate(
+              dt,
+              new ExponentialProfile.State(current.position, current.velocity),
+              new ExponentialProfile.State(goal.position, goal.velocity));
+
+      return new TrapezoidProfile.State(next.position, next.velocity);
+    };
+  }
+}
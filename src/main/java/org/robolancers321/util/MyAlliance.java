@@ -1,14 +1,44 @@
 /* (C) Robolancers 2024 */
 package org.robolancers321.util;
 
+import edu.wpi.first.util.function.BooleanConsumer;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
+/**
+ * Alliance color sampled from the driver station once per loop. Reads are a cached flag, and
+ * anything derived from the alliance should register a listener to rebuild itself when it flips
+ * instead of checking on every call.
+ */
 public class MyAlliance {
+  private static volatile boolean isRed = false;
+
+  private static final List<BooleanConsumer> listeners = new ArrayList<>();
+
   public static boolean isRed() {
+    return isRed;
+  }
+
+  /** Called with the current alliance right away and again every time it changes. */
+  public static void addListener(BooleanConsumer listener) {
+    listeners.add(listener);
+
+    listener.accept(isRed);
+  }
+
+  /** Samples the driver station, call once per loop before anything reads the alliance. */
+  public static void update() {
     Optional<Alliance> myAlliance = DriverStation.getAlliance();
 
-    return myAlliance.isPresent() && myAlliance.get() == DriverStation.Alliance.Red;
+    boolean red = myAlliance.isPresent() && myAlliance.get() == DriverStation.Alliance.Red;
+
+    if (red == isRed) return;
+
+    isRed = red;
+
+    for (BooleanConsumer listener : listeners) listener.accept(red);
   }
 }
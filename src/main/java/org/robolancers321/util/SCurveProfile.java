@@ -0,0 +1,98 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+
+/**
+ * Jerk-limited (s-curve) profile built by running a trapezoid profile and averaging its last
+ * maxAcceleration / maxJerk seconds of output. Averaging a trapezoid over that window turns each
+ * acceleration step into a ramp of maxJerk while keeping the same end point, so the move takes one
+ * window longer but the motor never sees a step change in torque. Moves too short to reach max
+ * velocity can reverse acceleration inside one window, which ramps at up to twice maxJerk.
+ */
+public class SCurveProfile implements MotionProfile {
+  private static final int kMaxSamples = 1024;
+
+  private final TrapezoidProfile trapezoidProfile;
+  private final double windowSeconds;
+
+  // trailing trapezoid samples, oldest at head
+  private final double[] positions = new double[kMaxSamples];
+  private final double[] velocities = new double[kMaxSamples];
+  private final double[] durations = new double[kMaxSamples];
+  private int head = 0;
+  private int count = 0;
+  private double windowTotal = 0.0;
+
+  private TrapezoidProfile.State trapezoidState = null;
+  private TrapezoidProfile.State lastOutput = null;
+
+  public SCurveProfile(double maxVelocity, double maxAcceleration, double maxJerk) {
+    this.trapezoidProfile = new TrapezoidProfile(new Constraints(maxVelocity, maxAcceleration));
+    this.windowSeconds = maxAcceleration / maxJerk;
+  }
+
+  private void reset(TrapezoidProfile.State state) {
+    this.trapezoidState = new TrapezoidProfile.State(state.position, state.velocity);
+
+    this.head = 0;
+    this.count = 0;
+    this.windowTotal = 0.0;
+
+    // treat the reference as having sat at this state for a full window
+    this.push(state.position, state.velocity, this.windowSeconds);
+  }
+
+  private void push(double position, double velocity, double dt) {
+    if (this.count == kMaxSamples) this.dropOldest();
+
+    int tail = (this.head + this.count) % kMaxSamples;
+
+    this.positions[tail] = position;
+    this.velocities[tail] = velocity;
+    this.durations[tail] = dt;
+
+    this.count++;
+    this.windowTotal += dt;
+  }
+
+  private void dropOldest() {
+    this.windowTotal -= this.durations[this.head];
+    this.head = (this.head + 1) % kMaxSamples;
+    this.count--;
+  }
+
+  @Override
+  public TrapezoidProfile.State calculate(
+      double dt, TrapezoidProfile.State current, TrapezoidProfile.State goal) {
+    // someone else moved the reference, so the history no longer describes it
+    if (current != this.lastOutput) this.reset(current);
+
+    this.trapezoidState = this.trapezoidProfile.calculate(dt, this.trapezoidState, goal);
+    this.push(this.trapezoidState.position, this.trapezoidState.velocity, dt);
+
+    while (this.count > 1 && this.windowTotal - this.durations[this.head] >= this.windowSeconds)
+      this.dropOldest();
+
+    // the oldest sample only partly overlaps the window
+    double excess = Math.max(this.windowTotal - this.windowSeconds, 0.0);
+
+    double positionSum = 0.0;
+    double velocitySum = 0.0;
+    double weightSum = 0.0;
+
+    for (int i = 0; i < this.count; i++) {
+      int index = (this.head + i) % kMaxSamples;
+      double weight = i == 0 ? this.durations[index] - excess : this.durations[index];
+
+      positionSum += weight * this.positions[index];
+      velocitySum += weight * this.velocities[index];
+      weightSum += weight;
+    }
+
+    this.lastOutput = new TrapezoidProfile.State(positionSum / weightSum, velocitySum / weightSum);
+
+    return this.lastOutput;
+  }
+}
@@ -0,0 +1,221 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans moves of the retractor and pivot together so both joints arrive at the same time while
+ * staying out of the regions where the intake and shooter hit each other. Every candidate path is
+ * a sequence of rest-to-rest segments, each segment time-synchronized by slowing down the faster
+ * joint, and the fastest candidate that clears every interference zone wins.
+ */
+public class SuperstructurePlanner {
+  /** Axis-aligned region of joint space (degrees) that the two joints must never enter together. */
+  public record Zone(double minRetractor, double maxRetractor, double minPivot, double maxPivot) {
+    public boolean contains(double retractorDeg, double pivotDeg) {
+      return retractorDeg > this.minRetractor
+          && retractorDeg < this.maxRetractor
+          && pivotDeg > this.minPivot
+          && pivotDeg < this.maxPivot;
+    }
+  }
+
+  /** Motion and travel limits of one joint, in degrees. */
+  public record Limits(
+      double maxVelocity, double maxAcceleration, double minPosition, double maxPosition) {
+    public boolean reachable(double position) {
+      return position >= this.minPosition && position <= this.maxPosition;
+    }
+  }
+
+  /** One synchronized rest-to-rest move, with the scaled limits each joint should use. */
+  public record Segment(
+      double retractorGoalDeg,
+      double pivotGoalDeg,
+      Limits retractorLimits,
+      Limits pivotLimits,
+      double durationSeconds) {}
+
+  public record Plan(List<Segment> segments, boolean collisionFree) {
+    public double totalTimeSeconds() {
+      double total = 0.0;
+
+      for (Segment segment : this.segments) total += segment.durationSeconds();
+
+      return total;
+    }
+  }
+
+  private final List<Zone> zones;
+  private final Limits retractorLimits;
+  private final Limits pivotLimits;
+  private final double marginDeg;
+  private final double checkStepSeconds;
+
+  public SuperstructurePlanner(
+      List<Zone> zones,
+      Limits retractorLimits,
+      Limits pivotLimits,
+      double marginDeg,
+      double checkStepSeconds) {
+    this.zones = zones;
+    this.retractorLimits = retractorLimits;
+    this.pivotLimits = pivotLimits;
+    this.marginDeg = marginDeg;
+    this.checkStepSeconds = checkStepSeconds;
+  }
+
+  /** Time for a rest-to-rest trapezoidal move over the given distance. */
+  public static double profileTime(double distance, Limits limits) {
+    distance = Math.abs(distance);
+
+    double accelDistance = limits.maxVelocity() * limits.maxVelocity() / limits.maxAcceleration();
+
+    if (distance >= accelDistance)
+      return distance / limits.maxVelocity() + limits.maxVelocity() / limits.maxAcceleration();
+
+    return 2.0 * Math.sqrt(distance / limits.maxAcceleration());
+  }
+
+  /** Position along a rest-to-rest trapezoidal move at time t. */
+  public static double profilePosition(double start, double goal, Limits limits, double t) {
+    double distance = Math.abs(goal - start);
+    double direction = Math.signum(goal - start);
+    double totalTime = profileTime(distance, limits);
+
+    if (t <= 0.0) return start;
+    if (t >= totalTime) return goal;
+
+    double accel = limits.maxAcceleration();
+    double cruiseVelocity = Math.min(limits.maxVelocity(), Math.sqrt(distance * accel));
+    double accelTime = cruiseVelocity / accel;
+
+    double traveled;
+
+    if (t < accelTime) traveled = 0.5 * accel * t * t;
+    else if (t < totalTime - accelTime)
+      traveled = 0.5 * accel * accelTime * accelTime + cruiseVelocity * (t - accelTime);
+    else {
+      double remaining = totalTime - t;
+      traveled = distance - 0.5 * accel * remaining * remaining;
+    }
+
+    return start + direction * traveled;
+  }
+
+  // slowing a profile down by a factor k in time scales velocity by k and acceleration by k^2
+  private static Limits stretch(Limits limits, double naturalTime, double targetTime) {
+    if (naturalTime <= 0.0 || targetTime <= naturalTime) return limits;
+
+    double k = naturalTime / targetTime;
+
+    return new Limits(
+        limits.maxVelocity() * k,
+        limits.maxAcceleration() * k * k,
+        limits.minPosition(),
+        limits.maxPosition());
+  }
+
+  private Segment synchronize(
+      double retractorStart, double pivotStart, double retractorGoal, double pivotGoal) {
+    double retractorTime = profileTime(retractorGoal - retractorStart, this.retractorLimits);
+    double pivotTime = profileTime(pivotGoal - pivotStart, this.pivotLimits);
+    double duration = Math.max(retractorTime, pivotTime);
+
+    return new Segment(
+        retractorGoal,
+        pivotGoal,
+        stretch(this.retractorLimits, retractorTime, duration),
+        stretch(this.pivotLimits, pivotTime, duration),
+        duration);
+  }
+
+  private boolean collides(double retractorDeg, double pivotDeg) {
+    for (Zone zone : this.zones) if (zone.contains(retractorDeg, pivotDeg)) return true;
+
+    return false;
+  }
+
+  private boolean segmentCollides(double retractorStart, double pivotStart, Segment segment) {
+    double endTime = segment.durationSeconds() + this.checkStepSeconds;
+
+    for (double t = 0.0; t <= endTime; t += this.checkStepSeconds) {
+      double retractorDeg =
+          profilePosition(retractorStart, segment.retractorGoalDeg(), segment.retractorLimits(), t);
+      double pivotDeg =
+          profilePosition(pivotStart, segment.pivotGoalDeg(), segment.pivotLimits(), t);
+
+      if (this.collides(retractorDeg, pivotDeg)) return true;
+    }
+
+    return false;
+  }
+
+  // builds a plan through the given waypoints, or returns null if any segment collides
+  private Plan tryPath(double retractorStart, double pivotStart, double[][] waypoints) {
+    List<Segment> segments = new ArrayList<>(waypoints.length);
+
+    double retractorDeg = retractorStart;
+    double pivotDeg = pivotStart;
+
+    for (double[] waypoint : waypoints) {
+      Segment segment = this.synchronize(retractorDeg, pivotDeg, waypoint[0], waypoint[1]);
+
+      if (this.segmentCollides(retractorDeg, pivotDeg, segment)) return null;
+
+      segments.add(segment);
+
+      retractorDeg = waypoint[0];
+      pivotDeg = waypoint[1];
+    }
+
+    return new Plan(segments, true);
+  }
+
+  /**
+   * Finds the fastest collision-free path from the start to the goal. Candidates are the direct
+   * move, one joint at a time in either order, and a detour through each corner of every zone. If
+   * nothing clears the zones, the direct move is returned and flagged as not collision free.
+   */
+  public Plan plan(
+      double retractorStart, double pivotStart, double retractorGoal, double pivotGoal) {
+    List<double[][]> candidates = new ArrayList<>();
+
+    candidates.add(new double[][] {{retractorGoal, pivotGoal}});
+    candidates.add(new double[][] {{retractorGoal, pivotStart}, {retractorGoal, pivotGoal}});
+    candidates.add(new double[][] {{retractorStart, pivotGoal}, {retractorGoal, pivotGoal}});
+
+    for (Zone zone : this.zones) {
+      double[] retractorCorners = {
+        zone.minRetractor() - this.marginDeg, zone.maxRetractor() + this.marginDeg
+      };
+      double[] pivotCorners = {zone.minPivot() - this.marginDeg, zone.maxPivot() + this.marginDeg};
+
+      for (double retractorCorner : retractorCorners) {
+        if (!this.retractorLimits.reachable(retractorCorner)) continue;
+
+        for (double pivotCorner : pivotCorners) {
+          if (!this.pivotLimits.reachable(pivotCorner)) continue;
+
+          candidates.add(
+              new double[][] {{retractorCorner, pivotCorner}, {retractorGoal, pivotGoal}});
+        }
+      }
+    }
+
+    Plan best = null;
+
+    for (double[][] candidate : candidates) {
+      Plan plan = this.tryPath(retractorStart, pivotStart, candidate);
+
+      if (plan != null && (best == null || plan.totalTimeSeconds() < best.totalTimeSeconds()))
+        best = plan;
+    }
+
+    if (best != null) return best;
+
+    return new Plan(
+        List.of(this.synchronize(retractorStart, pivotStart, retractorGoal, pivotGoal)), false);
+  }
+}
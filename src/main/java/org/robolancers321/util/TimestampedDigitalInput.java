@@ -0,0 +1,81 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321.util;
+
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
+import edu.wpi.first.wpilibj.DigitalInput;
+
+/**
+ * Digital sensor whose edges are captured by an FPGA interrupt instead of being polled once per
+ * loop. Edge timestamps are in FPGA seconds, the same timebase as {@code Timer.getFPGATimestamp()}.
+ */
+public class TimestampedDigitalInput {
+  private final DigitalInput input;
+  private final AsynchronousInterrupt interrupt;
+  private final boolean activeLow;
+
+  private volatile double lastActivatedTimestamp = Double.NaN;
+  private volatile double lastDeactivatedTimestamp = Double.NaN;
+
+  private volatile Runnable onActivated = () -> {};
+  private volatile Runnable onDeactivated = () -> {};
+
+  public TimestampedDigitalInput(int channel, boolean activeLow) {
+    this.input = new DigitalInput(channel);
+    this.activeLow = activeLow;
+
+    this.interrupt = new AsynchronousInterrupt(this.input, this::handleInterrupt);
+    this.interrupt.setInterruptEdges(true, true);
+    this.interrupt.enable();
+  }
+
+  // runs on the interrupt thread, keep this short
+  private void handleInterrupt(Boolean rising, Boolean falling) {
+    if (rising) {
+      double timestamp = this.interrupt.getRisingTimestamp();
+
+      if (this.activeLow) this.deactivated(timestamp);
+      else this.activated(timestamp);
+    }
+
+    if (falling) {
+      double timestamp = this.interrupt.getFallingTimestamp();
+
+      if (this.activeLow) this.activated(timestamp);
+      else this.deactivated(timestamp);
+    }
+  }
+
+  private void activated(double timestamp) {
+    this.lastActivatedTimestamp = timestamp;
+    this.onActivated.run();
+  }
+
+  private void deactivated(double timestamp) {
+    this.lastDeactivatedTimestamp = timestamp;
+    this.onDeactivated.run();
+  }
+
+  public boolean isActive() {
+    return this.input.get() != this.activeLow;
+  }
+
+  /** FPGA timestamp of the most recent activation, or NaN if it has never activated. */
+  public double getLastActivatedTimestamp() {
+    return this.lastActivatedTimestamp;
+  }
+
+  /** FPGA timestamp of the most recent deactivation, or NaN if it has never deactivated. */
+  public double getLastDeactivatedTimestamp() {
+    return this.lastDeactivatedTimestamp;
+  }
+
+  /** Sets a callback run from the interrupt thread whenever the sensor activates. */
+  public void setOnActivated(Runnable callback) {
+    this.onActivated = callback;
+  }
+
+  /** Sets a callback run from the interrupt thread whenever the sensor deactivates. */
+  public void setOnDeactivated(Runnable callback) {
+    this.onDeactivated = callback;
+  }
+}
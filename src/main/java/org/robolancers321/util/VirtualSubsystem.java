@@ -8,6 +8,10 @@ import java.util.List;
 public abstract class VirtualSubsystem {
   private static List<VirtualSubsystem> subsystems = new ArrayList<>();
 
+  // instances of the same class share a counter
+  private final AllocationMonitor.Counter periodicAllocations =
+      AllocationMonitor.counter(this.getClass().getSimpleName() + " periodic");
+
   public VirtualSubsystem() {
     subsystems.add(this);
   }
@@ -15,7 +19,9 @@ public abstract class VirtualSubsystem {
   /** Calls {@link #periodic()} on all virtual subsystems. */
   public static void periodicAll() {
     for (var subsystem : subsystems) {
+      subsystem.periodicAllocations.start();
       subsystem.periodic();
+      subsystem.periodicAllocations.stop();
     }
   }
 
@@ -0,0 +1,26 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Marks a test as guarding a hot path. The test takes an {@link AllocationLimitExtension.HotPath},
+ * does its setup, and hands the code that runs every loop to measure, and the test fails if that
+ * code allocates more than the limit per call once it has warmed up.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(AllocationLimitExtension.class)
+public @interface AllocationLimit {
+  /** Average bytes one call may allocate, zero for code that runs every loop. */
+  long maxBytesPerCall() default 0;
+
+  /** Calls before measuring, enough for the jit to compile and inline the path. */
+  int warmupCalls() default 20_000;
+
+  int measuredCalls() default 1_000;
+}
@@ -0,0 +1,95 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+
+/**
+ * Measures what a hot path allocates on the test thread and fails the test if it is over the limit
+ * in its {@link AllocationLimit}. Only the code passed to {@link HotPath#measure} is counted, so
+ * setup in the test body is free. Skips the test on a jvm that can't count allocations.
+ */
+public class AllocationLimitExtension
+    implements BeforeTestExecutionCallback, ParameterResolver, AfterTestExecutionCallback {
+  private static final Namespace kNamespace = Namespace.create(AllocationLimitExtension.class);
+
+  /** Runs a hot path enough times to warm it up, then counts what it allocates. */
+  public static class HotPath {
+    private final AllocationLimit limit;
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    private long allocatedBytes = -1;
+
+    private HotPath(AllocationLimit limit, com.sun.management.ThreadMXBean threadBean) {
+      this.limit = limit;
+      this.threadBean = threadBean;
+    }
+
+    public void measure(Runnable body) {
+      for (int i = 0; i < this.limit.warmupCalls(); i++) body.run();
+
+      long start = this.threadBean.getCurrentThreadAllocatedBytes();
+
+      for (int i = 0; i < this.limit.measuredCalls(); i++) body.run();
+
+      this.allocatedBytes = this.threadBean.getCurrentThreadAllocatedBytes() - start;
+    }
+  }
+
+  @Override
+  public void beforeTestExecution(ExtensionContext context) {
+    assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            && bean.isThreadAllocatedMemorySupported(),
+        "this jvm can't count allocations");
+
+    ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Override
+  public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext context) {
+    return parameterContext.getParameter().getType() == HotPath.class;
+  }
+
+  @Override
+  public Object resolveParameter(ParameterContext parameterContext, ExtensionContext context) {
+    // only registered through the annotation, so it is always there
+    AllocationLimit limit = context.getRequiredTestMethod().getAnnotation(AllocationLimit.class);
+
+    HotPath hotPath =
+        new HotPath(limit, (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean());
+
+    context.getStore(kNamespace).put(HotPath.class, hotPath);
+
+    return hotPath;
+  }
+
+  @Override
+  public void afterTestExecution(ExtensionContext context) {
+    if (context.getExecutionException().isPresent()) return;
+
+    HotPath hotPath = context.getStore(kNamespace).get(HotPath.class, HotPath.class);
+
+    assertTrue(hotPath != null, "an @AllocationLimit test needs a HotPath parameter");
+    assertTrue(hotPath.allocatedBytes >= 0, "the test never measured its hot path");
+
+    double bytesPerCall = (double) hotPath.allocatedBytes / hotPath.limit.measuredCalls();
+
+    System.out.printf("%s: %.1f bytes per call%n", context.getDisplayName(), bytesPerCall);
+
+    assertTrue(
+        hotPath.allocatedBytes <= hotPath.limit.maxBytesPerCall() * hotPath.limit.measuredCalls(),
+        String.format(
+            "allocated %.1f bytes per call, the limit is %d",
+            bytesPerCall, hotPath.limit.maxBytesPerCall()));
+  }
+}
@@ -0,0 +1,83 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import org.junit.jupiter.api.Test;
+import org.robolancers321.Constants.ClimberConstants;
+import org.robolancers321.subsystems.Climber;
+
+public class ClimberLevelingTest {
+  @Test
+  public void positiveRollIsLeftSideHigh() {
+    // the convention integrateLeveling assumes, checked against wpilib's own geometry
+    Translation3d leftSide = new Translation3d(0.0, 1.0, 0.0);
+
+    assertTrue(leftSide.rotateBy(new Rotation3d(Math.toRadians(5.0), 0.0, 0.0)).getZ() > 0.0);
+  }
+
+  @Test
+  public void leftSideHighExtendsTheLeftHook() {
+    double offset = Climber.integrateLeveling(0.0, 5.0, 0.02);
+
+    // the left hook is extended by the offset, which lowers the high side
+    assertTrue(offset > 0.0);
+    assertTrue(Climber.integrateLeveling(0.0, -5.0, 0.02) < 0.0);
+  }
+
+  @Test
+  public void ignoresRollInsideTheDeadband() {
+    double roll = 0.5 * ClimberConstants.kRollDeadbandDeg;
+
+    assertEquals(1.0, Climber.integrateLeveling(1.0, roll, 0.02), 1e-12);
+  }
+
+  @Test
+  public void offsetIsClamped() {
+    double offset = 0.0;
+
+    for (int i = 0; i < 10000; i++) offset = Climber.integrateLeveling(offset, 30.0, 0.02);
+
+    assertEquals(ClimberConstants.kMaxLevelingOffset, offset, 1e-12);
+  }
+
+  private static double[] hookOutputs(double rollDeg) {
+    SimpleMotorFeedforward feedforward =
+        new SimpleMotorFeedforward(ClimberConstants.kS, ClimberConstants.kV);
+
+    // the shipped gains, whatever feedback they do or don't include
+    PIDController leftFeedback =
+        new PIDController(ClimberConstants.kP, ClimberConstants.kI, ClimberConstants.kD);
+    PIDController rightFeedback =
+        new PIDController(ClimberConstants.kP, ClimberConstants.kI, ClimberConstants.kD);
+
+    // retracting together with both hooks on the reference
+    TrapezoidProfile.State reference = new TrapezoidProfile.State(30.0, -20.0);
+
+    double offset = Climber.integrateLeveling(0.0, rollDeg, 0.02);
+    double offsetVelocity = offset / 0.02;
+
+    return new double[] {
+      Climber.hookOutput(feedforward, leftFeedback, reference, 30.0, offset, offsetVelocity),
+      Climber.hookOutput(feedforward, rightFeedback, reference, 30.0, -offset, -offsetVelocity)
+    };
+  }
+
+  @Test
+  public void rollDrivesTheHooksApart() {
+    double[] level = hookOutputs(0.0);
+
+    assertEquals(level[0], level[1], 1e-12);
+
+    // left side high, so the left hook has to be driven further out than the right
+    double[] tilted = hookOutputs(5.0);
+
+    assertTrue(tilted[0] - tilted[1] > 0.01);
+  }
+}
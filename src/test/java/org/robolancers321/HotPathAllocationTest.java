@@ -0,0 +1,82 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.robolancers321.AllocationLimitExtension.HotPath;
+import org.robolancers321.Constants.DrivetrainConstants;
+import org.robolancers321.subsystems.drivetrain.PoseHistory;
+import org.robolancers321.subsystems.drivetrain.SwerveSetpointGenerator;
+import org.robolancers321.subsystems.drivetrain.TractionMonitor;
+
+/**
+ * Drivetrain code that runs every loop must not make garbage, since gc pauses on the rio show up
+ * as loop overruns. Each test runs one piece of it thousands of times and fails if it allocated.
+ */
+public class HotPathAllocationTest {
+  @BeforeAll
+  public static void setup() {
+    // the traction monitor's debouncers read the fpga clock
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  @Test
+  @AllocationLimit
+  public void setpointGeneratorDoesNotAllocate(HotPath hotPath) {
+    SwerveSetpointGenerator generator =
+        new SwerveSetpointGenerator(
+            DrivetrainConstants.kModuleXMeters,
+            DrivetrainConstants.kModuleYMeters,
+            DrivetrainConstants.kMaxSpeedMetersPerSecond,
+            DrivetrainConstants.kMaxModuleAcceleration,
+            DrivetrainConstants.kMaxSteerRate);
+
+    // alternate between two requests so the generator never settles
+    boolean[] forward = {true};
+
+    hotPath.measure(
+        () -> {
+          forward[0] = !forward[0];
+
+          generator.generate(forward[0] ? 3.0 : -3.0, 1.0, forward[0] ? 2.0 : -2.0, 0.02);
+        });
+  }
+
+  @Test
+  @AllocationLimit
+  public void tractionMonitorDoesNotAllocate(HotPath hotPath) {
+    TractionMonitor monitor =
+        new TractionMonitor(DrivetrainConstants.kModuleXMeters, DrivetrainConstants.kModuleYMeters);
+
+    double[] speeds = {2.0, 2.1, 1.9, 3.5};
+    double[] anglesRad = {0.1, 0.1, 0.1, 0.1};
+
+    hotPath.measure(() -> monitor.update(speeds, anglesRad, 0.5, 0.02));
+  }
+
+  @Test
+  @AllocationLimit
+  public void poseHistoryDoesNotAllocate(HotPath hotPath) {
+    PoseHistory history = new PoseHistory(DrivetrainConstants.kPoseHistoryCapacity);
+    PoseHistory.Sample sample = new PoseHistory.Sample();
+
+    Pose2d pose = new Pose2d(2.0, 3.0, Rotation2d.fromDegrees(30.0));
+    ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.5, 0.2);
+
+    double[] timestamp = {0.0};
+
+    hotPath.measure(
+        () -> {
+          timestamp[0] += 0.02;
+
+          history.add(timestamp[0], pose, speeds);
+          history.sample(timestamp[0] - 0.11, sample);
+        });
+  }
+}
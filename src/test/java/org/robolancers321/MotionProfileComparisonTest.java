@@ -0,0 +1,245 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj.simulation.SingleJointedArmSim;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.robolancers321.Constants.PivotConstants;
+import org.robolancers321.Constants.RetractorConstants;
+import org.robolancers321.util.MotionProfile;
+
+/**
+ * Runs each profile type against a simulated pivot and retractor, measuring how long each takes to
+ * stay within kToleranceDeg and the peak current it draws. Every profile has to settle, and the
+ * s-curve has to keep the reference's jerk bounded by its limit, well under the step changes in
+ * acceleration a trapezoid makes, and draw less peak current than the trapezoid for it.
+ */
+public class MotionProfileComparisonTest {
+  private static final double kSimStepSeconds = 0.001;
+  private static final double kMoveTimeoutSeconds = 4.0;
+
+  private record Mechanism(
+      String name,
+      double gearing,
+      double moi,
+      double armLengthMeters,
+      double minAngleDeg,
+      double maxAngleDeg,
+      ArmFeedforward feedforward,
+      double kP,
+      double toleranceDeg,
+      double maxJerkDeg,
+      double profilePeriodSeconds,
+      double feedbackPeriodSeconds) {}
+
+  private record Result(double settleSeconds, double peakJerkDeg, double peakCurrentAmps) {}
+
+  private static final Mechanism pivot =
+      new Mechanism(
+          "pivot",
+          PivotConstants.kSimGearing,
+          PivotConstants.kSimMOI,
+          PivotConstants.kSimArmLengthMeters,
+          PivotConstants.kMinAngle,
+          PivotConstants.kMaxAngle,
+          new ArmFeedforward(PivotConstants.kS, PivotConstants.kG, PivotConstants.kV),
+          PivotConstants.kP,
+          PivotConstants.kToleranceDeg,
+          PivotConstants.kMaxJerkDeg,
+          0.02,
+          0.001); // position loop runs on the spark
+
+  private static final Mechanism retractor =
+      new Mechanism(
+          "retractor",
+          RetractorConstants.kSimGearing,
+          RetractorConstants.kSimMOI,
+          RetractorConstants.kSimArmLengthMeters,
+          RetractorConstants.kMinAngle,
+          RetractorConstants.kMaxAngle,
+          new ArmFeedforward(RetractorConstants.kS, RetractorConstants.kG, RetractorConstants.kV),
+          RetractorConstants.kP,
+          RetractorConstants.kToleranceDeg,
+          RetractorConstants.kMaxJerkDeg,
+          RetractorConstants.kControlLoopPeriodSeconds,
+          RetractorConstants.kControlLoopPeriodSeconds);
+
+  @BeforeAll
+  public static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+  }
+
+  private static MotionProfile createProfile(Mechanism mechanism, MotionProfile.Type type) {
+    boolean isPivot = mechanism == pivot;
+
+    return switch (type) {
+      case kSCurve -> MotionProfile.sCurve(
+          isPivot ? PivotConstants.kProfileConstraints : RetractorConstants.kProfileConstraints,
+          isPivot ? PivotConstants.kMaxJerkDeg : RetractorConstants.kMaxJerkDeg);
+      case kExponential -> MotionProfile.exponential(
+          isPivot ? PivotConstants.kProfileMaxInputVolts : RetractorConstants.kProfileMaxInputVolts,
+          isPivot ? PivotConstants.kProfileKV : RetractorConstants.kProfileKV,
+          isPivot ? PivotConstants.kProfileKA : RetractorConstants.kProfileKA);
+      default -> MotionProfile.trapezoid(
+          isPivot ? PivotConstants.kProfileConstraints : RetractorConstants.kProfileConstraints);
+    };
+  }
+
+  private static Result simulateMove(
+      Mechanism mechanism, MotionProfile profile, double startDeg, double goalDeg) {
+    SingleJointedArmSim sim =
+        new SingleJointedArmSim(
+            DCMotor.getNEO(1),
+            mechanism.gearing(),
+            mechanism.moi(),
+            mechanism.armLengthMeters(),
+            Math.toRadians(mechanism.minAngleDeg()),
+            Math.toRadians(mechanism.maxAngleDeg()),
+            true,
+            Math.toRadians(startDeg));
+
+    TrapezoidProfile.State reference = new TrapezoidProfile.State(startDeg, 0.0);
+    TrapezoidProfile.State goal = new TrapezoidProfile.State(goalDeg, 0.0);
+
+    int profileDivider = (int) Math.round(mechanism.profilePeriodSeconds() / kSimStepSeconds);
+    int feedbackDivider = (int) Math.round(mechanism.feedbackPeriodSeconds() / kSimStepSeconds);
+
+    double volts = 0.0;
+    double lastOutOfTolerance = 0.0;
+
+    double lastAcceleration = 0.0;
+    double peakJerk = 0.0;
+    double peakCurrent = 0.0;
+
+    int steps = (int) Math.round(kMoveTimeoutSeconds / kSimStepSeconds);
+
+    for (int i = 0; i < steps; i++) {
+      double positionDeg = Math.toDegrees(sim.getAngleRads());
+
+      if (i % profileDivider == 0) {
+        double dt = mechanism.profilePeriodSeconds();
+        double lastVelocity = reference.velocity;
+
+        reference = profile.calculate(dt, reference, goal);
+
+        double acceleration = (reference.velocity - lastVelocity) / dt;
+
+        peakJerk = Math.max(peakJerk, Math.abs(acceleration - lastAcceleration) / dt);
+        lastAcceleration = acceleration;
+      }
+
+      if (i % feedbackDivider == 0) {
+        double feedforward =
+            mechanism
+                .feedforward()
+                .calculate(Math.toRadians(reference.position), Math.toRadians(reference.velocity));
+        double feedback = mechanism.kP() * (reference.position - positionDeg);
+
+        volts = 12.0 * MathUtil.clamp(feedforward + feedback, -1.0, 1.0);
+      }
+
+      sim.setInputVoltage(volts);
+      sim.update(kSimStepSeconds);
+
+      peakCurrent = Math.max(peakCurrent, sim.getCurrentDrawAmps());
+
+      double time = (i + 1) * kSimStepSeconds;
+
+      if (Math.abs(Math.toDegrees(sim.getAngleRads()) - goalDeg) >= mechanism.toleranceDeg())
+        lastOutOfTolerance = time;
+    }
+
+    // never settled if it was still outside tolerance on the final step
+    double settleSeconds =
+        lastOutOfTolerance >= kMoveTimeoutSeconds ? Double.POSITIVE_INFINITY : lastOutOfTolerance;
+
+    return new Result(settleSeconds, peakJerk, peakCurrent);
+  }
+
+  private static void compare(Mechanism mechanism, double[][] moves) {
+    for (double[] move : moves) {
+      Result[] results = new Result[MotionProfile.Type.values().length];
+
+      for (MotionProfile.Type type : MotionProfile.Type.values()) {
+        Result result =
+            simulateMove(mechanism, createProfile(mechanism, type), move[0], move[1]);
+
+        assertTrue(
+            Double.isFinite(result.settleSeconds()),
+            mechanism.name() + " " + type + " never settled moving to " + move[1]);
+
+        results[type.ordinal()] = result;
+      }
+
+      Result sCurve = results[MotionProfile.Type.kSCurve.ordinal()];
+      Result trapezoid = results[MotionProfile.Type.kTrapezoid.ordinal()];
+
+      double sCurveJerk = sCurve.peakJerkDeg();
+      double trapezoidJerk = trapezoid.peakJerkDeg();
+
+      // a move too short to cruise flips acceleration inside one window, which averages out to
+      // at most twice the limit
+      assertTrue(
+          sCurveJerk <= 2.0 * mechanism.maxJerkDeg() + 1e-6,
+          mechanism.name() + " s-curve jerk " + sCurveJerk + " is over its limit");
+      assertTrue(
+          sCurveJerk < trapezoidJerk,
+          mechanism.name() + " s-curve jerk " + sCurveJerk + " is not under the trapezoid's");
+
+      // the s-curve gives up a window of settle time to ease into each acceleration, which should
+      // show up as a lower current spike
+      assertTrue(
+          sCurve.peakCurrentAmps() < trapezoid.peakCurrentAmps(),
+          String.format(
+              "%s moving to %.1f: s-curve peaks at %.1f A settling in %.3f s, trapezoid at %.1f A"
+                  + " settling in %.3f s",
+              mechanism.name(),
+              move[1],
+              sCurve.peakCurrentAmps(),
+              sCurve.settleSeconds(),
+              trapezoid.peakCurrentAmps(),
+              trapezoid.settleSeconds()));
+    }
+  }
+
+  @Test
+  public void comparePivotProfiles() {
+    compare(
+        pivot,
+        new double[][] {
+          {PivotConstants.PivotSetpoint.kRetracted.angle, PivotConstants.PivotSetpoint.kAmp.angle},
+          {PivotConstants.PivotSetpoint.kAmp.angle, PivotConstants.PivotSetpoint.kRetracted.angle},
+          {
+            PivotConstants.PivotSetpoint.kRetracted.angle,
+            PivotConstants.PivotSetpoint.kMating.angle
+          }
+        });
+  }
+
+  @Test
+  public void compareRetractorProfiles() {
+    compare(
+        retractor,
+        new double[][] {
+          {
+            RetractorConstants.RetractorSetpoint.kRetracted.angle,
+            RetractorConstants.RetractorSetpoint.kIntake.angle
+          },
+          {
+            RetractorConstants.RetractorSetpoint.kIntake.angle,
+            RetractorConstants.RetractorSetpoint.kRetracted.angle
+          },
+          {
+            RetractorConstants.RetractorSetpoint.kRetracted.angle,
+            RetractorConstants.RetractorSetpoint.kMating.angle
+          }
+        });
+  }
+}
@@ -0,0 +1,100 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.robolancers321.Constants.PivotConstants;
+import org.robolancers321.Constants.RetractorConstants;
+import org.robolancers321.Constants.SuperstructureConstants;
+import org.robolancers321.util.SuperstructurePlanner;
+import org.robolancers321.util.SuperstructurePlanner.Limits;
+import org.robolancers321.util.SuperstructurePlanner.Plan;
+import org.robolancers321.util.SuperstructurePlanner.Segment;
+import org.robolancers321.util.SuperstructurePlanner.Zone;
+
+public class SuperstructurePlannerTest {
+  private static final Limits retractorLimits = new Limits(900.0, 10000.0, -7.0, 182.0);
+  private static final Limits pivotLimits = new Limits(160.0, 1500.0, -23.0, 77.0);
+
+  private static SuperstructurePlanner planner(List<Zone> zones) {
+    return new SuperstructurePlanner(zones, retractorLimits, pivotLimits, 3.0, 0.005);
+  }
+
+  @Test
+  public void directMoveArrivesTogether() {
+    Plan plan = planner(List.of()).plan(182.0, -23.0, 150.0, -7.0);
+
+    assertTrue(plan.collisionFree());
+    assertEquals(1, plan.segments().size());
+
+    Segment segment = plan.segments().get(0);
+
+    // the retractor is stretched to finish with the slower pivot
+    assertEquals(
+        segment.durationSeconds(),
+        SuperstructurePlanner.profileTime(32.0, segment.retractorLimits()),
+        1e-9);
+    assertEquals(
+        segment.durationSeconds(),
+        SuperstructurePlanner.profileTime(16.0, segment.pivotLimits()),
+        1e-9);
+  }
+
+  @Test
+  public void profileReachesGoal() {
+    double time = SuperstructurePlanner.profileTime(100.0, pivotLimits);
+
+    assertEquals(0.0, SuperstructurePlanner.profilePosition(0.0, 100.0, pivotLimits, 0.0), 1e-9);
+    assertEquals(
+        50.0, SuperstructurePlanner.profilePosition(0.0, 100.0, pivotLimits, time / 2.0), 1e-9);
+    assertEquals(100.0, SuperstructurePlanner.profilePosition(0.0, 100.0, pivotLimits, time), 1e-9);
+  }
+
+  @Test
+  public void detoursAroundInterference() {
+    List<Zone> zones = List.of(new Zone(155.0, 190.0, 20.0, 80.0));
+
+    // raising the pivot while the intake is still stowed would pass through the zone
+    Plan plan = planner(zones).plan(182.0, -23.0, 120.0, 77.0);
+
+    assertTrue(plan.collisionFree());
+    assertTrue(plan.segments().size() > 1);
+
+    Segment first = plan.segments().get(0);
+    assertFalse(zones.get(0).contains(first.retractorGoalDeg(), first.pivotGoalDeg()));
+  }
+
+  @Test
+  public void waypointsClearTheArmTolerances() {
+    SuperstructurePlanner planner =
+        new SuperstructurePlanner(
+            SuperstructureConstants.kInterferenceZones,
+            retractorLimits,
+            pivotLimits,
+            SuperstructureConstants.kWaypointMarginDeg,
+            SuperstructureConstants.kCollisionCheckStepSeconds);
+
+    Plan plan = planner.plan(182.0, -23.0, 120.0, 77.0);
+
+    assertTrue(plan.segments().size() > 1);
+
+    // a segment ends once each arm is within its tolerance, anywhere in that box must be clear
+    for (Segment segment : plan.segments().subList(0, plan.segments().size() - 1)) {
+      for (Zone zone : SuperstructureConstants.kInterferenceZones) {
+        boolean retractorOverlaps =
+            segment.retractorGoalDeg() + RetractorConstants.kToleranceDeg > zone.minRetractor()
+                && segment.retractorGoalDeg() - RetractorConstants.kToleranceDeg
+                    < zone.maxRetractor();
+        boolean pivotOverlaps =
+            segment.pivotGoalDeg() + PivotConstants.kToleranceDeg > zone.minPivot()
+                && segment.pivotGoalDeg() - PivotConstants.kToleranceDeg < zone.maxPivot();
+
+        assertFalse(retractorOverlaps && pivotOverlaps);
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.MathUtil;
+import org.junit.jupiter.api.Test;
+import org.robolancers321.subsystems.drivetrain.SwerveSetpointGenerator;
+
+public class SwerveSetpointGeneratorTest {
+  private static final double[] moduleX = {0.3, 0.3, -0.3, -0.3};
+  private static final double[] moduleY = {0.3, -0.3, -0.3, 0.3};
+
+  private static final double maxSpeed = 4.5;
+  private static final double maxAcceleration = 10.0;
+  private static final double maxSteerRate = 2.0 * Math.PI;
+  private static final double dt = 0.02;
+
+  private static SwerveSetpointGenerator generator() {
+    return new SwerveSetpointGenerator(moduleX, moduleY, maxSpeed, maxAcceleration, maxSteerRate);
+  }
+
+  private static double[][] moduleVelocities(SwerveSetpointGenerator generator) {
+    double[][] velocities = new double[moduleX.length][];
+
+    for (int i = 0; i < moduleX.length; i++) {
+      double speed = generator.getModuleSpeed(i);
+      double angle = generator.getModuleAngleRad(i);
+
+      velocities[i] = new double[] {speed * Math.cos(angle), speed * Math.sin(angle)};
+    }
+
+    return velocities;
+  }
+
+  @Test
+  public void rampsNoFasterThanTheAccelerationLimit() {
+    SwerveSetpointGenerator generator = generator();
+
+    double[][] before = moduleVelocities(generator);
+
+    for (int step = 0; step < 200; step++) {
+      generator.generate(3.0, 1.0, 2.0, dt);
+
+      double[][] after = moduleVelocities(generator);
+
+      for (int i = 0; i < moduleX.length; i++) {
+        double change = Math.hypot(after[i][0] - before[i][0], after[i][1] - before[i][1]);
+
+        assertTrue(change <= maxAcceleration * dt + 1e-9);
+      }
+
+      before = after;
+    }
+
+    assertTrue(generator.isSettled());
+    assertEquals(3.0, generator.getVx(), 1e-6);
+    assertEquals(1.0, generator.getVy(), 1e-6);
+    assertEquals(2.0, generator.getOmega(), 1e-6);
+  }
+
+  @Test
+  public void steersNoFasterThanTheSteeringRate() {
+    SwerveSetpointGenerator generator = generator();
+
+    generator.reset(2.0, 0.0, 0.0);
+
+    double[] before = new double[moduleX.length];
+
+    for (int i = 0; i < moduleX.length; i++) before[i] = generator.getModuleAngleRad(i);
+
+    // a quarter turn at speed, which the acceleration limit alone would allow in a few cycles
+    for (int step = 0; step < 200; step++) {
+      generator.generate(0.0, 2.0, 0.0, dt);
+
+      for (int i = 0; i < moduleX.length; i++) {
+        double angle = generator.getModuleAngleRad(i);
+        double turn = Math.abs(MathUtil.angleModulus(angle - before[i]));
+
+        assertTrue(Math.min(turn, Math.PI - turn) <= maxSteerRate * dt + 1e-9);
+
+        before[i] = angle;
+      }
+    }
+
+    assertTrue(generator.isSettled());
+    assertEquals(2.0, generator.getVy(), 1e-6);
+  }
+
+  @Test
+  public void reversesWithoutTurningAround() {
+    SwerveSetpointGenerator generator = generator();
+
+    generator.reset(2.0, 0.0, 0.0);
+
+    // flipping the modules means a reversal is only limited by deceleration
+    int steps = (int) Math.ceil(4.0 / (maxAcceleration * dt));
+
+    for (int step = 0; step < steps; step++) {
+      generator.generate(-2.0, 0.0, 0.0, dt);
+
+      for (int i = 0; i < moduleX.length; i++)
+        assertEquals(0.0, Math.sin(generator.getModuleAngleRad(i)), 1e-9);
+    }
+
+    assertTrue(generator.isSettled());
+    assertEquals(-2.0, generator.getVx(), 1e-9);
+  }
+}
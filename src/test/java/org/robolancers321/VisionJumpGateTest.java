@@ -0,0 +1,74 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.robolancers321.subsystems.drivetrain.VisionJumpGate;
+
+public class VisionJumpGateTest {
+  private static final double maxJump = 1.0;
+  private static final double agreement = 0.3;
+  private static final int confirmCount = 5;
+
+  private static VisionJumpGate gate() {
+    return new VisionJumpGate(maxJump, agreement, confirmCount);
+  }
+
+  @Test
+  public void acceptsEstimatesNearOdometry() {
+    VisionJumpGate gate = gate();
+
+    assertTrue(gate.accept(2.5, 5.5, 2.0, 5.0, false));
+  }
+
+  @Test
+  public void rejectsASingleBadSolve() {
+    VisionJumpGate gate = gate();
+
+    assertFalse(gate.accept(6.0, 5.0, 2.0, 5.0, false));
+    assertTrue(gate.accept(2.1, 5.0, 2.0, 5.0, false));
+  }
+
+  @Test
+  public void acceptsJumpsWhileSlipping() {
+    VisionJumpGate gate = gate();
+
+    assertTrue(gate.accept(6.0, 5.0, 2.0, 5.0, true));
+  }
+
+  @Test
+  public void acceptsAJumpOnceEnoughEstimatesAgree() {
+    VisionJumpGate gate = gate();
+
+    for (int i = 1; i < confirmCount; i++)
+      assertFalse(gate.accept(3.5 + 0.01 * i, 5.0, 2.0, 5.0, false));
+
+    assertTrue(gate.accept(3.5, 5.0, 2.0, 5.0, false));
+  }
+
+  @Test
+  public void disagreeingJumpsStartOver() {
+    VisionJumpGate gate = gate();
+
+    for (int i = 1; i < confirmCount; i++) assertFalse(gate.accept(3.5, 5.0, 2.0, 5.0, false));
+
+    // a jump somewhere else is a different story, so it has to be confirmed on its own
+    assertFalse(gate.accept(2.0, 7.0, 2.0, 5.0, false));
+
+    for (int i = 2; i < confirmCount; i++) assertFalse(gate.accept(2.0, 7.0, 2.0, 5.0, false));
+
+    assertTrue(gate.accept(2.0, 7.0, 2.0, 5.0, false));
+  }
+
+  @Test
+  public void estimatesNearOdometryResetTheCount() {
+    VisionJumpGate gate = gate();
+
+    for (int i = 1; i < confirmCount; i++) assertFalse(gate.accept(3.5, 5.0, 2.0, 5.0, false));
+
+    assertTrue(gate.accept(2.0, 5.0, 2.0, 5.0, false));
+    assertFalse(gate.accept(3.5, 5.0, 2.0, 5.0, false));
+  }
+}
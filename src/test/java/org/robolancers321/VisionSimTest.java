@@ -0,0 +1,262 @@
+/* (C) Robolancers 2024 */
+package org.robolancers321;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.robolancers321.Constants.DrivetrainConstants;
+import org.robolancers321.subsystems.drivetrain.AprilTagCamera;
+import org.robolancers321.subsystems.drivetrain.AprilTagCamera.Estimate;
+import org.robolancers321.subsystems.drivetrain.AprilTagCameraRegistry;
+import org.robolancers321.subsystems.drivetrain.FieldNoteTracker;
+import org.robolancers321.subsystems.drivetrain.FieldNoteTracker.TrackedNote;
+import org.robolancers321.subsystems.drivetrain.PoseHistory;
+import org.robolancers321.subsystems.drivetrain.VisionJumpGate;
+import org.robolancers321.subsystems.drivetrain.VisionSim;
+
+/**
+ * Runs the vision path against simulated cameras on paused sim time, so frames arrive at the
+ * configured rate and latency no matter how fast the machine is. Tag estimates go through the real
+ * camera registry and jump gate, so a bad starting pose has to be corrected the way the drivetrain
+ * would correct it, and the estimates per second and capture to fuse latency the pipeline sustains
+ * are checked against what the simulated cameras produce.
+ */
+public class VisionSimTest {
+  private static final double kLoopSeconds = 0.02;
+  private static final double kConvergeTimeoutSeconds = 3.0;
+  private static final double kConvergedMeters = 0.1;
+
+  // both cameras see tags every frame from here, allow for the first frames still in flight
+  private static final double kMinThroughputFraction = 0.75;
+
+  // on average, the camera's latency plus at most a poll period and a loop waiting to be drained
+  private static final double kMaxMeanFuseLatencySeconds =
+      DrivetrainConstants.kSimCameraLatencyMs / 1000.0
+          + DrivetrainConstants.kVisionPollPeriodSeconds
+          + kLoopSeconds;
+
+  // in front of the blue speaker with the launcher, and the main camera, facing it
+  private static final Pose2d truePose = new Pose2d(2.5, 5.5, new Rotation2d());
+
+  private static final ChassisSpeeds still = new ChassisSpeeds();
+
+  @BeforeAll
+  public static void setup() {
+    assertTrue(HAL.initialize(500, 0));
+
+    SimHooks.pauseTiming();
+  }
+
+  @AfterAll
+  public static void teardown() {
+    SimHooks.resumeTiming();
+  }
+
+  private static SwerveModulePosition[] stillModules() {
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+
+    for (int i = 0; i < positions.length; i++) positions[i] = new SwerveModulePosition();
+
+    return positions;
+  }
+
+  @Test
+  public void tagEstimatesConverge() throws IOException {
+    // two cameras with random latency, so frames finish out of capture order
+    AprilTagCameraRegistry registry =
+        AprilTagCameraRegistry.fromConfig(
+            new ObjectMapper()
+                .readTree(
+                    """
+                    {"cameras": [
+                      {"name": "test left tag camera", "x": -0.35, "y": 0.2, "z": 0.516,
+                       "rollDeg": 180.0, "pitchDeg": -31.5, "yawDeg": 180.0},
+                      {"name": "test right tag camera", "x": -0.35, "y": -0.2, "z": 0.516,
+                       "rollDeg": 180.0, "pitchDeg": -31.5, "yawDeg": 180.0}
+                    ]}
+                    """));
+
+    VisionSim visionSim = new VisionSim();
+
+    for (AprilTagCamera camera : registry.getCameras())
+      visionSim.addTagCamera(
+          camera.getPhotonCamera(),
+          camera.getRobotToCamera(),
+          VisionSim.cameraProperties(DrivetrainConstants.kSimTagCameraFovDeg));
+
+    registry.start();
+
+    SwerveModulePosition[] modules = stillModules();
+
+    // odometry starts a meter and a half off, only vision can fix it
+    SwerveDrivePoseEstimator poseEstimator =
+        new SwerveDrivePoseEstimator(
+            DrivetrainConstants.kSwerveKinematics,
+            truePose.getRotation(),
+            modules,
+            new Pose2d(
+                truePose.getTranslation().plus(new Translation2d(1.2, -0.9)),
+                truePose.getRotation()));
+
+    // the same gate and history lookup the drivetrain fuses through
+    VisionJumpGate gate =
+        new VisionJumpGate(
+            DrivetrainConstants.kVisionMaxPoseJumpMeters,
+            DrivetrainConstants.kVisionJumpAgreementMeters,
+            DrivetrainConstants.kVisionJumpConfirmCount);
+    PoseHistory history = new PoseHistory(DrivetrainConstants.kPoseHistoryCapacity);
+    PoseHistory.Sample sample = new PoseHistory.Sample();
+
+    List<Estimate> estimates = new ArrayList<>();
+    Set<String> camerasSeen = new HashSet<>();
+
+    int rejectedBeforeFirstFuse = 0;
+    boolean fused = false;
+    double convergeSeconds = Double.NaN;
+
+    int estimateCount = 0;
+    double fuseLatencySum = 0.0;
+
+    double startTimestamp = Timer.getFPGATimestamp();
+    int loops = (int) Math.round(kConvergeTimeoutSeconds / kLoopSeconds);
+
+    // runs the whole window rather than stopping at convergence, so throughput is measured over
+    // the same span every time
+    for (int i = 0; i < loops; i++) {
+      visionSim.update(truePose);
+
+      SimHooks.stepTiming(kLoopSeconds);
+
+      history.add(Timer.getFPGATimestamp(), poseEstimator.getEstimatedPosition(), still);
+
+      registry.drainEstimates(estimates);
+
+      for (int j = 1; j < estimates.size(); j++)
+        assertTrue(
+            estimates.get(j - 1).timestampSeconds() <= estimates.get(j).timestampSeconds(),
+            "estimates were drained out of capture order");
+
+      double drainTimestamp = Timer.getFPGATimestamp();
+
+      for (Estimate estimate : estimates) {
+        camerasSeen.add(estimate.camera());
+
+        double fuseLatency = drainTimestamp - estimate.timestampSeconds();
+
+        estimateCount++;
+        fuseLatencySum += fuseLatency;
+
+        assertTrue(history.sample(estimate.timestampSeconds(), sample));
+
+        boolean accepted =
+            gate.accept(estimate.pose().getX(), estimate.pose().getY(), sample.x, sample.y, false);
+
+        if (!accepted) {
+          assertFalse(fused, "the gate closed again on estimates that agree");
+
+          rejectedBeforeFirstFuse++;
+          continue;
+        }
+
+        fused = true;
+
+        poseEstimator.addVisionMeasurement(estimate.pose(), estimate.timestampSeconds());
+      }
+
+      poseEstimator.update(truePose.getRotation(), modules);
+
+      Translation2d estimated = poseEstimator.getEstimatedPosition().getTranslation();
+
+      if (Double.isNaN(convergeSeconds)
+          && estimated.getDistance(truePose.getTranslation()) < kConvergedMeters)
+        convergeSeconds = Timer.getFPGATimestamp() - startTimestamp;
+    }
+
+    double elapsedSeconds = Timer.getFPGATimestamp() - startTimestamp;
+    double estimatesPerSecond = estimateCount / elapsedSeconds;
+    double meanFuseLatency = fuseLatencySum / estimateCount;
+
+    assertEquals(2, camerasSeen.size(), "both tag cameras should have produced estimates");
+
+    // the jump is held back until enough estimates agree on it
+    assertEquals(DrivetrainConstants.kVisionJumpConfirmCount - 1, rejectedBeforeFirstFuse);
+    assertFalse(
+        Double.isNaN(convergeSeconds),
+        "pose never came within " + kConvergedMeters + " m of the true pose");
+
+    double cameraRate = camerasSeen.size() * DrivetrainConstants.kSimCameraFps;
+
+    assertTrue(
+        estimatesPerSecond >= kMinThroughputFraction * cameraRate,
+        String.format(
+            "drained %.1f estimates/s of the %.0f frames/s the cameras produce, converged in"
+                + " %.2f s",
+            estimatesPerSecond, cameraRate, convergeSeconds));
+    assertTrue(
+        meanFuseLatency <= kMaxMeanFuseLatencySeconds,
+        String.format(
+            "estimates waited %.1f ms on average from capture to fusion",
+            1000.0 * meanFuseLatency));
+  }
+
+  @Test
+  public void noteTrackerFindsSimulatedNote() {
+    PhotonCamera camera = new PhotonCamera("test note camera");
+
+    VisionSim visionSim = new VisionSim();
+    visionSim.addNoteCamera(
+        camera,
+        DrivetrainConstants.kRobotToNoteCameraTransform,
+        VisionSim.cameraProperties(DrivetrainConstants.kSimNoteCameraFovDeg));
+
+    // the note camera looks out the left side, which is +y at a heading of zero
+    Pose2d robotPose = new Pose2d(2.0, 4.0, new Rotation2d());
+    Translation2d note = new Translation2d(2.0, 5.5);
+
+    visionSim.addNote(note);
+
+    FieldNoteTracker tracker = new FieldNoteTracker();
+
+    for (int i = 0; i < 50; i++) {
+      SimHooks.stepTiming(kLoopSeconds);
+
+      visionSim.update(robotPose);
+
+      PhotonPipelineResult result = camera.getLatestResult();
+
+      tracker.update(result, robotPose, Timer.getFPGATimestamp());
+    }
+
+    assertTrue(camera.getLatestResult().hasTargets(), "the note camera never saw the note");
+    assertEquals(0.0, camera.getLatestResult().getBestTarget().getYaw(), 1.0);
+
+    TrackedNote tracked = tracker.getBestNote(robotPose.getTranslation(), Timer.getFPGATimestamp());
+
+    assertNotNull(tracked, "the tracker never became confident in the note");
+
+    // the tracker assumes notes lie flat on the carpet, the sim aims at the note's center
+    assertEquals(0.0, tracked.position().getDistance(note), 0.25);
+  }
+}